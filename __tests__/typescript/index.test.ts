@@ -63,6 +63,98 @@ DocumentPicker.pickMultiple({
   type: [DocumentPicker.types.video,DocumentPicker.types.pdf, 'public.audio']
 })
 
+DocumentPicker.pickMultiple({
+  type: [DocumentPicker.types.allFiles],
+  concurrency: 2,
+  verifyCopy: true
+})
+
+DocumentPicker.pickStreaming({
+  type: [DocumentPicker.types.allFiles]
+}, (document, index) => {
+  console.log(index, document.uri, document.name)
+}).then(summary => summary.total)
+
+DocumentPicker.pick({
+  type: [DocumentPicker.types.allFiles],
+  copyTo: 'lazy'
+}).then(res => DocumentPicker.materialize(res.uri, progress => {
+  console.log(progress.bytesCopied / progress.totalBytes)
+})).then(path => path.length)
+
+const copySubscription = DocumentPicker.addCopyProgressListener(progress => {
+  if (progress.bytesPerSecond < 1024) {
+    DocumentPicker.cancelCopy(progress.jobId).then(found => found)
+  }
+})
+copySubscription.remove()
+
+DocumentPicker.open('content://com.android.providers.downloads.documents/document/1')
+  .then(file => DocumentPicker.read(file.handle, 0, file.seekable ? file.size : 65536)
+    .then(base64 => DocumentPicker.close(file.handle).then(() => base64.length)))
+
+DocumentPicker.getCacheInfo().then(info => info.size <= info.maxSize)
+DocumentPicker.configureCache({maxSize: 64 * 1024 * 1024})
+DocumentPicker.clearCache()
+
+DocumentPicker.getStats().then(stats => stats.lastPick.total <= stats.ipc.total)
+DocumentPicker.getStats().then(stats => stats.stages.copy.meanMs * stats.counters.copies)
+DocumentPicker.getStats().then(stats => stats.counters.pathCacheHits / stats.counters.documents)
+DocumentPicker.getStats().then(stats => Object.keys(stats.resolvers).filter(authority => stats.resolvers[authority].copy > 0))
+DocumentPicker.setTracingEnabled(true)
+
+DocumentPicker.pick({
+  type: [DocumentPicker.types.video],
+  extendedMetadata: true
+}).then(res => {
+  const chunks = Math.ceil((res.size || 0) / (8 * 1024 * 1024))
+  return [chunks, res.lastModified, res.flags, res.documentId, res.isVirtual, res.supportsThumbnail]
+})
+
+DocumentPicker.pick({
+  type: [DocumentPicker.types.pdf],
+  mode: 'open'
+}).then(res => res.contentUri)
+DocumentPicker.getRecentDocuments()
+  .then(recent => recent.length > 0 ? DocumentPicker.reopen(recent[0].contentUri) : null)
+  .then(doc => doc && doc.changed ? doc.lastModified : doc && doc.openedAt)
+
+DocumentPicker.pickDirectory()
+  .then(dir => DocumentPicker.readDirectory(dir.uri, {mimeTypes: ['image/*'], extensions: ['jpg'], maxDepth: 2}, entries => {
+    entries.forEach(entry => console.log(entry.path, entry.depth, entry.size))
+  }))
+  .then(summary => summary.total + summary.directories)
+
+DocumentPicker.pick({
+  type: [DocumentPicker.types.allFiles],
+  hash: 'sha256'
+}).then(res => res.hash)
+
+DocumentPicker.pickMultiple({
+  type: [DocumentPicker.types.allFiles],
+  maxSize: 50 * 1024 * 1024,
+  minSize: 1,
+  extensions: ['pdf', '.jpg'],
+  maxCount: 10
+}).then(results => results.filter(res => !res.rejected || res.reason === 'tooLarge'))
+
+DocumentPicker.getThumbnail('content://com.android.providers.media.documents/document/image%3A1', 256, 256)
+  .then(thumbnail => thumbnail ? thumbnail.uri + thumbnail.width * thumbnail.height : null)
+
+DocumentPicker.configureCache({maxSize: 64 * 1024 * 1024, maxAge: 24 * 60 * 60 * 1000})
+  .then(info => info.evictedBytes + info.orphanBytes + info.releasedCount + info.pendingSize)
+DocumentPicker.release('content://com.android.providers.downloads.documents/document/1')
+  .then(freed => DocumentPicker.releaseAll().then(all => freed + all))
+
+DocumentPicker.pickCompact({type: [DocumentPicker.types.images], batchSize: 1000}, batch => {
+  batch.uri.forEach((uri, i) => console.log(batch.offset + i, uri, batch.name[i], batch.size[i], batch.reason && batch.reason[i]))
+}).then(summary => summary.total / summary.batches)
+
+DocumentPicker.getPendingCopies().then(copies => Promise.all(copies
+  .filter(copy => !copy.running)
+  .map(copy => DocumentPicker.resumeCopy(copy.uri, progress => console.log(progress.bytesCopied / (copy.size || 1))))))
+DocumentPicker.getStats().then(stats => stats.counters.resumedCopies)
+
 DocumentPicker.pick({type: 'image/jpg'});
 DocumentPicker.pick({type: 'public.png'});
 
@@ -0,0 +1,174 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Results of a compact pick, kept in parallel columns instead of one map per document.
+ *
+ * Workers of the {@link ResolutionPipeline} fill distinct indexes, and once the whole selection is
+ * resolved the columns are cut into batches of at most {@code maxCount} documents and roughly
+ * {@link #MAX_BATCH_CHARS} characters of strings, so no single bridge message grows with the size
+ * of the selection and each key is serialized once per batch rather than once per document. Each
+ * batch is handed out as soon as it is cut, only one of them is built at a time.
+ */
+class CompactResults {
+  interface BatchListener {
+    void onBatch(WritableMap batch);
+  }
+
+  // strings dominate the size of a batch, numbers and nulls are negligible next to URIs
+  static final int MAX_BATCH_CHARS = 128 * 1024;
+
+  static final String COLUMN_URI = "uri";
+  static final String COLUMN_NAME = "name";
+  static final String COLUMN_TYPE = "type";
+  static final String COLUMN_SIZE = "size";
+  static final String COLUMN_HASH = "hash";
+  static final String COLUMN_CONTENT_URI = "contentUri";
+  static final String COLUMN_REASON = "reason";
+
+  private final int count;
+  private final String[] uris;
+  private final String[] names;
+  private final String[] types;
+  private final long[] sizes;
+  @Nullable
+  private final String[] hashes;
+  @Nullable
+  private final String[] contentUris;
+  private final String[] reasons;
+
+  CompactResults(int count, boolean withHashes, boolean withContentUris) {
+    this.count = count;
+    this.uris = new String[count];
+    this.names = new String[count];
+    this.types = new String[count];
+    this.sizes = new long[count];
+    this.hashes = withHashes ? new String[count] : null;
+    this.contentUris = withContentUris ? new String[count] : null;
+    this.reasons = new String[count];
+  }
+
+  /**
+   * @param size size reported by the provider, or -1 when unknown.
+   */
+  void set(int index, String uri, @Nullable String name, @Nullable String type, long size,
+           @Nullable String hash, @Nullable String contentUri) {
+    uris[index] = uri;
+    names[index] = name;
+    types[index] = type;
+    sizes[index] = size;
+    if (hashes != null) {
+      hashes[index] = hash;
+    }
+    if (contentUris != null) {
+      contentUris[index] = contentUri;
+    }
+  }
+
+  /**
+   * Records a document left out by the pick filter, its uri stays the one returned by the picker.
+   */
+  void reject(int index, String uri, @Nullable String name, @Nullable String type, long size, String reason) {
+    set(index, uri, name, type, size, null, null);
+    reasons[index] = reason;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /**
+   * Hands the batches to {@code listener} in selection order, each one {@code {offset, count,
+   * uri: [...], name: [...], type: [...], size: [...]}} plus {@code hash}, {@code contentUri} and
+   * {@code reason} columns when they apply. Unknown values are null.
+   *
+   * @return the number of batches.
+   */
+  int emitBatches(int maxCount, BatchListener listener) {
+    int batches = 0;
+    int offset = 0;
+    while (offset < count) {
+      int end = batchEnd(offset, maxCount);
+      listener.onBatch(toBatch(offset, end));
+      batches++;
+      offset = end;
+    }
+    return batches;
+  }
+
+  /**
+   * @return the exclusive end of the batch starting at {@code offset}, which holds at least one
+   * document however long its strings are.
+   */
+  int batchEnd(int offset, int maxCount) {
+    int end = offset;
+    int chars = 0;
+    while (end < count && end - offset < Math.max(1, maxCount) && (end == offset || chars < MAX_BATCH_CHARS)) {
+      chars += length(uris[end]) + length(names[end]) + length(types[end]);
+      if (hashes != null) {
+        chars += length(hashes[end]);
+      }
+      if (contentUris != null) {
+        chars += length(contentUris[end]);
+      }
+      end++;
+    }
+    return end;
+  }
+
+  private WritableMap toBatch(int from, int to) {
+    WritableMap batch = Arguments.createMap();
+    batch.putInt("offset", from);
+    batch.putInt("count", to - from);
+    batch.putArray(COLUMN_URI, column(uris, from, to));
+    batch.putArray(COLUMN_NAME, column(names, from, to));
+    batch.putArray(COLUMN_TYPE, column(types, from, to));
+
+    WritableArray sizeColumn = Arguments.createArray();
+    for (int i = from; i < to; ++i) {
+      if (sizes[i] >= 0) {
+        // doubles hold every integer up to 2^53, so sizes above 2 GB survive the bridge
+        sizeColumn.pushDouble(sizes[i]);
+      } else {
+        sizeColumn.pushNull();
+      }
+    }
+    batch.putArray(COLUMN_SIZE, sizeColumn);
+
+    if (hashes != null) {
+      batch.putArray(COLUMN_HASH, column(hashes, from, to));
+    }
+    if (contentUris != null) {
+      batch.putArray(COLUMN_CONTENT_URI, column(contentUris, from, to));
+    }
+    // most picks reject nothing, leave the column out rather than send a row of nulls
+    for (int i = from; i < to; ++i) {
+      if (reasons[i] != null) {
+        batch.putArray(COLUMN_REASON, column(reasons, from, to));
+        break;
+      }
+    }
+    return batch;
+  }
+
+  private static WritableArray column(String[] values, int from, int to) {
+    WritableArray array = Arguments.createArray();
+    for (int i = from; i < to; ++i) {
+      if (values[i] != null) {
+        array.pushString(values[i]);
+      } else {
+        array.pushNull();
+      }
+    }
+    return array;
+  }
+
+  private static int length(@Nullable String value) {
+    return value != null ? value.length() : 0;
+  }
+}
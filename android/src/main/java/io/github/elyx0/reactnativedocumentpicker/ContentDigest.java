@@ -0,0 +1,141 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Incremental digest over document contents, fed straight from the copy buffers.
+ */
+class ContentDigest {
+  static final String SHA256 = "sha256";
+  static final String MD5 = "md5";
+  static final String CRC32 = "crc32";
+
+  private static final int SCRATCH_SIZE = 64 * 1024;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final MessageDigest digest;
+  private final CRC32 crc;
+  // CRC32 only takes arrays before API 26, direct buffers are staged through this one
+  private byte[] scratch;
+
+  private ContentDigest(MessageDigest digest, CRC32 crc) {
+    this.digest = digest;
+    this.crc = crc;
+  }
+
+  static boolean isSupported(String algorithm) {
+    return SHA256.equals(algorithm) || MD5.equals(algorithm) || CRC32.equals(algorithm);
+  }
+
+  static ContentDigest create(String algorithm) throws IOException {
+    try {
+      if (SHA256.equals(algorithm)) {
+        return new ContentDigest(MessageDigest.getInstance("SHA-256"), null);
+      }
+      if (MD5.equals(algorithm)) {
+        return new ContentDigest(MessageDigest.getInstance("MD5"), null);
+      }
+      if (CRC32.equals(algorithm)) {
+        return new ContentDigest(null, new CRC32());
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Digest algorithm not available: " + algorithm, e);
+    }
+    throw new IOException("Unsupported digest algorithm: " + algorithm);
+  }
+
+  /**
+   * Consumes the remaining bytes of {@code buffer}, leaving its position at the limit.
+   */
+  void update(ByteBuffer buffer) {
+    if (digest != null) {
+      digest.update(buffer);
+      return;
+    }
+
+    if (buffer.hasArray()) {
+      crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      buffer.position(buffer.limit());
+      return;
+    }
+
+    if (scratch == null) {
+      scratch = new byte[SCRATCH_SIZE];
+    }
+    while (buffer.hasRemaining()) {
+      int count = Math.min(scratch.length, buffer.remaining());
+      buffer.get(scratch, 0, count);
+      crc.update(scratch, 0, count);
+    }
+  }
+
+  String hex() {
+    if (digest == null) {
+      long value = crc.getValue();
+      char[] chars = new char[8];
+      for (int i = 7; i >= 0; --i) {
+        chars[i] = HEX[(int) (value & 0xf)];
+        value >>>= 4;
+      }
+      return new String(chars);
+    }
+
+    byte[] bytes = digest.digest();
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; ++i) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+
+  static String hexOf(File file, String algorithm, ByteBuffer buffer) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      return hexOf(in.getChannel(), algorithm, buffer);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Digests a document straight from the descriptor handed out by its provider, without copying
+   * it first.
+   */
+  static String hexOf(Context context, Uri uri, String algorithm, ByteBuffer buffer) throws IOException {
+    ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+    if (descriptor == null) {
+      throw new FileNotFoundException("Unable to open " + uri);
+    }
+    FileInputStream in = new FileInputStream(descriptor.getFileDescriptor());
+    try {
+      return hexOf(in.getChannel(), algorithm, buffer);
+    } finally {
+      in.close();
+      descriptor.close();
+    }
+  }
+
+  private static String hexOf(FileChannel channel, String algorithm, ByteBuffer buffer) throws IOException {
+    ContentDigest digest = create(algorithm);
+    buffer.clear();
+    while (channel.read(buffer) >= 0) {
+      buffer.flip();
+      digest.update(buffer);
+      buffer.clear();
+    }
+    return digest.hex();
+  }
+}
@@ -0,0 +1,128 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of the document copies currently running, so they can report progress and be
+ * cancelled from JS.
+ */
+class CopyJobs {
+  interface Listener {
+    void onProgress(Job job, long bytesCopied, long totalBytes, double bytesPerSecond);
+  }
+
+  private static final long PROGRESS_INTERVAL_MS = 100;
+
+  private final AtomicInteger nextId = new AtomicInteger(1);
+  private final ConcurrentHashMap<Integer, Job> jobs = new ConcurrentHashMap<>();
+  private final Listener listener;
+
+  CopyJobs(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Registers a copy running on the calling thread, it has to be passed to {@link #finish} once
+   * the copy returns.
+   */
+  Job start(Uri uri) {
+    Job job = new Job(nextId.getAndIncrement(), uri.toString(), Thread.currentThread());
+    jobs.put(job.id, job);
+    return job;
+  }
+
+  void finish(Job job) {
+    jobs.remove(job.id);
+    job.detach();
+  }
+
+  /**
+   * Cancels a copy on behalf of the user, what it copied so far is not worth resuming.
+   *
+   * @return whether a running copy with this id was found.
+   */
+  boolean cancel(int id) {
+    Job job = jobs.get(id);
+    if (job == null) {
+      return false;
+    }
+    job.cancel(true);
+    return true;
+  }
+
+  /**
+   * Stops every copy, e.g. when the module goes away, leaving them to be resumed later.
+   */
+  void cancelAll() {
+    List<Job> running = new ArrayList<>(jobs.values());
+    for (Job job : running) {
+      job.cancel(false);
+    }
+  }
+
+  class Job implements FileCopier.ProgressListener {
+    final int id;
+    final String uri;
+    private final long startTime = SystemClock.elapsedRealtime();
+    private long lastEvent;
+    private volatile boolean cancelled;
+    private volatile boolean discarded;
+    private Thread thread;
+
+    private Job(int id, String uri, Thread thread) {
+      this.id = id;
+      this.uri = uri;
+      this.thread = thread;
+    }
+
+    boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * @return whether the partial copy should be deleted rather than kept for a resume.
+     */
+    boolean isDiscarded() {
+      return discarded;
+    }
+
+    private synchronized void cancel(boolean discard) {
+      discarded |= discard;
+      cancelled = true;
+      // copies run over FileChannels, interrupting closes them and unblocks a stalled provider
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+
+    private synchronized void detach() {
+      thread = null;
+      // the pool thread goes on with other work, do not leak a late interrupt into it
+      Thread.interrupted();
+    }
+
+    @Override
+    public void onProgress(long bytesCopied, long totalBytes) throws IOException {
+      if (cancelled) {
+        throw new InterruptedIOException("Copy of " + uri + " was cancelled");
+      }
+
+      long now = SystemClock.elapsedRealtime();
+      if (now - lastEvent < PROGRESS_INTERVAL_MS && bytesCopied != totalBytes) {
+        return;
+      }
+      lastEvent = now;
+
+      long elapsed = Math.max(1, now - startTime);
+      listener.onProgress(this, bytesCopied, totalBytes, bytesCopied * 1000.0 / elapsed);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Journal of a copy into the document cache, kept next to its {@code .part} file.
+ *
+ * It records what is being copied and how many bytes of the part file were flushed to disk, so a
+ * copy interrupted by process death can go on from there with the same name, key and digests
+ * instead of starting over.
+ */
+class CopyJournal {
+  private static final String TAG = "RNDocumentPicker";
+
+  final String uri;
+  @Nullable
+  final String name;
+  // as reported by the provider when the copy started, part of the cache key
+  final long lastModified;
+  final long size;
+  final boolean verify;
+  @Nullable
+  final String hashAlgorithm;
+  long committed;
+  long updatedAt;
+
+  CopyJournal(String uri, @Nullable String name, long lastModified, long size, boolean verify,
+              @Nullable String hashAlgorithm) {
+    this.uri = uri;
+    this.name = name;
+    this.lastModified = lastModified;
+    this.size = size;
+    this.verify = verify;
+    this.hashAlgorithm = hashAlgorithm;
+  }
+
+  /**
+   * @return the journal, or null if there is none or it can not be read.
+   */
+  @Nullable
+  static CopyJournal read(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      JSONObject json = new JSONObject(DocumentCache.readFile(file));
+      CopyJournal journal = new CopyJournal(json.getString("uri"),
+          json.isNull("name") ? null : json.getString("name"),
+          json.optLong("lastModified", -1),
+          json.optLong("size", -1),
+          json.optBoolean("verify", false),
+          json.isNull("hash") ? null : json.optString("hash", null));
+      journal.committed = json.optLong("committed", 0);
+      journal.updatedAt = json.optLong("updatedAt", file.lastModified());
+      return journal;
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Discarding unreadable copy journal " + file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the journal atomically, a crash leaves either the previous or the new one.
+   */
+  void write(File file) throws IOException {
+    updatedAt = System.currentTimeMillis();
+    try {
+      JSONObject json = new JSONObject();
+      json.put("uri", uri);
+      json.put("name", name == null ? JSONObject.NULL : name);
+      json.put("lastModified", lastModified);
+      json.put("size", size);
+      json.put("verify", verify);
+      json.put("hash", hashAlgorithm == null ? JSONObject.NULL : hashAlgorithm);
+      json.put("committed", committed);
+      json.put("updatedAt", updatedAt);
+
+      File partial = new File(file.getPath() + ".tmp");
+      FileOutputStream out = new FileOutputStream(partial);
+      try {
+        out.write(json.toString().getBytes("UTF-8"));
+        // synced before the rename, so a crash never leaves an empty journal behind
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+      if (!partial.renameTo(file)) {
+        throw new IOException("Unable to replace copy journal " + file);
+      }
+    } catch (JSONException e) {
+      throw new IOException(e);
+    }
+  }
+}
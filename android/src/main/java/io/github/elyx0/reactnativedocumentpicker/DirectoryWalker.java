@@ -0,0 +1,276 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a document tree picked with {@code ACTION_OPEN_DOCUMENT_TREE}.
+ *
+ * Every directory is listed with a single projected query on its children URI. Subdirectories go
+ * to a shared queue drained by at most {@code concurrency} workers, and matching documents are
+ * handed to the listener in pages of {@code pageSize} entries, so memory stays flat regardless of
+ * the size of the tree.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class DirectoryWalker {
+  interface Listener {
+    /**
+     * Called from a worker thread, pages are delivered one at a time.
+     */
+    void onPage(List<Entry> entries);
+
+    void onComplete(int total, int directories);
+
+    void onError(Exception e);
+  }
+
+  private static final String[] CHILD_PROJECTION = {
+      DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+      DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+      DocumentsContract.Document.COLUMN_MIME_TYPE,
+      DocumentsContract.Document.COLUMN_SIZE,
+      DocumentsContract.Document.COLUMN_LAST_MODIFIED
+  };
+
+  static class Entry {
+    final String uri;
+    @Nullable
+    final String name;
+    @Nullable
+    final String mimeType;
+    final long size;
+    final long lastModified;
+    /**
+     * Path of the document relative to the picked directory, e.g. {@code photos/2019/a.jpg}.
+     */
+    final String path;
+    final int depth;
+
+    private Entry(String uri, String name, String mimeType, long size, long lastModified, String path, int depth) {
+      this.uri = uri;
+      this.name = name;
+      this.mimeType = mimeType;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.path = path;
+      this.depth = depth;
+    }
+  }
+
+  /**
+   * Which documents are reported, directories are always walked up to {@link #maxDepth}.
+   */
+  static class Filter {
+    // exact MIME types or wildcards such as image/*, null matches everything
+    @Nullable
+    Set<String> mimeTypes;
+    // lower case extensions without the dot, null matches everything
+    @Nullable
+    Set<String> extensions;
+    // depth of the deepest directory listed, the picked directory is 0, negative for no limit
+    int maxDepth = -1;
+
+    void setMimeTypes(List<String> types) {
+      mimeTypes = types.contains("*/*") ? null : new HashSet<>(types);
+    }
+
+    void setExtensions(List<String> values) {
+      extensions = new HashSet<>();
+      for (String value : values) {
+        extensions.add(PickFilter.normalizeExtension(value));
+      }
+    }
+
+    boolean accepts(@Nullable String name, @Nullable String mimeType) {
+      if (mimeTypes != null && (mimeType == null || !matchesMimeType(mimeType))) {
+        return false;
+      }
+      return extensions == null || PickFilter.hasExtension(name, extensions);
+    }
+
+    private boolean matchesMimeType(String mimeType) {
+      if (mimeTypes.contains(mimeType)) {
+        return true;
+      }
+      int slash = mimeType.indexOf('/');
+      return slash > 0 && mimeTypes.contains(mimeType.substring(0, slash) + "/*");
+    }
+  }
+
+  private static class Directory {
+    final String documentId;
+    final String path;
+    final int depth;
+
+    Directory(String documentId, String path, int depth) {
+      this.documentId = documentId;
+      this.path = path;
+      this.depth = depth;
+    }
+  }
+
+  private final Context context;
+  private final Executor executor;
+  private final Uri treeUri;
+  private final Filter filter;
+  private final int concurrency;
+  private final int pageSize;
+  private final IpcCounter ipc;
+  private final Listener listener;
+
+  private final ConcurrentLinkedQueue<Directory> pending = new ConcurrentLinkedQueue<>();
+  // directories queued or being listed, the walk is over once it drops to zero
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final AtomicInteger workers = new AtomicInteger();
+  private final AtomicInteger directories = new AtomicInteger();
+  private final AtomicBoolean failed = new AtomicBoolean();
+  private final Object pageLock = new Object();
+  private List<Entry> page;
+  private int total;
+
+  DirectoryWalker(Context context, Executor executor, Uri treeUri, Filter filter, int concurrency, int pageSize,
+                  IpcCounter ipc, Listener listener) {
+    this.context = context;
+    this.executor = executor;
+    this.treeUri = treeUri;
+    this.filter = filter;
+    this.concurrency = Math.max(1, concurrency);
+    this.pageSize = Math.max(1, pageSize);
+    this.ipc = ipc;
+    this.listener = listener;
+    this.page = new ArrayList<>(this.pageSize);
+  }
+
+  void start() {
+    outstanding.incrementAndGet();
+    pending.add(new Directory(DocumentsContract.getTreeDocumentId(treeUri), "", 0));
+    spawnWorkers();
+  }
+
+  private void spawnWorkers() {
+    while (!failed.get() && !pending.isEmpty()) {
+      int running = workers.get();
+      if (running >= concurrency) {
+        return;
+      }
+      if (workers.compareAndSet(running, running + 1)) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              drain();
+            } finally {
+              workers.decrementAndGet();
+            }
+            // a directory may have been queued after our last poll while every worker was busy
+            spawnWorkers();
+          }
+        });
+      }
+    }
+  }
+
+  private void drain() {
+    Directory directory;
+    while (!failed.get() && (directory = pending.poll()) != null) {
+      try {
+        list(directory);
+      } catch (Exception e) {
+        if (failed.compareAndSet(false, true)) {
+          listener.onError(e);
+        }
+        return;
+      }
+
+      directories.incrementAndGet();
+      // children were counted before this decrement, zero means nothing is left anywhere
+      if (outstanding.decrementAndGet() == 0) {
+        finish();
+      }
+    }
+  }
+
+  private void list(Directory directory) {
+    Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, directory.documentId);
+    ipc.countQuery();
+    Cursor cursor = context.getContentResolver().query(childrenUri, CHILD_PROJECTION, null, null, null);
+    if (cursor == null) {
+      return;
+    }
+
+    try {
+      while (cursor.moveToNext()) {
+        String documentId = cursor.getString(0);
+        String name = cursor.getString(1);
+        String mimeType = cursor.getString(2);
+        String path = directory.path + (name != null ? name : documentId);
+
+        if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+          if (filter.maxDepth < 0 || directory.depth < filter.maxDepth) {
+            outstanding.incrementAndGet();
+            pending.add(new Directory(documentId, path + "/", directory.depth + 1));
+            spawnWorkers();
+          }
+        } else if (filter.accepts(name, mimeType)) {
+          Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+          add(new Entry(documentUri.toString(), name, mimeType,
+              cursor.isNull(3) ? -1 : cursor.getLong(3),
+              cursor.isNull(4) ? -1 : cursor.getLong(4),
+              path, directory.depth));
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private void add(Entry entry) {
+    List<Entry> full = null;
+    synchronized (pageLock) {
+      page.add(entry);
+      total++;
+      if (page.size() >= pageSize) {
+        full = page;
+        page = new ArrayList<>(pageSize);
+      }
+    }
+    if (full != null) {
+      deliver(full);
+    }
+  }
+
+  private void deliver(List<Entry> entries) {
+    // serialized so JS receives pages one after the other
+    synchronized (listener) {
+      listener.onPage(entries);
+    }
+  }
+
+  private void finish() {
+    List<Entry> last;
+    int count;
+    synchronized (pageLock) {
+      last = page;
+      count = total;
+      page = new ArrayList<>(0);
+    }
+    if (!last.isEmpty()) {
+      deliver(last);
+    }
+    listener.onComplete(count, directories.get());
+  }
+}
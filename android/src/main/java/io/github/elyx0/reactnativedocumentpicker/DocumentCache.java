@@ -0,0 +1,928 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content addressed cache for documents copied into {@link DocumentPickerModule#DOCUMENTS_DIR}.
+ *
+ * Copies are keyed by provider URI, last modified time and size, so picking the same document
+ * twice returns the existing copy without reading it again. Every entry lives in its own
+ * directory named after the key, which keeps the original display name intact. Entries are
+ * evicted least recently used first once the byte budget is exceeded, and the index is
+ * persisted next to them so the cache survives restarts. Entries handed out by a pick are pinned
+ * until the next pick resolves, their paths may still be read by the app. Pins only stretch the
+ * budget up to {@link #PINNED_BUDGET_FACTOR} times, past that the entries pinned first go too.
+ *
+ * Providers which report neither a last modified time nor a size give no way to tell a stale copy
+ * from a fresh one, so their documents are copied again each time under a key of their own.
+ *
+ * {@link #sweep} additionally evicts copies which were not accessed for {@link #getMaxAgeMs} and
+ * deletes whatever no entry refers to, e.g. partial copies of older versions.
+ *
+ * Copies are written to a {@code .part} file next to a {@link CopyJournal}. When a copy fails or
+ * the process dies both are kept, and the next copy of the same version of the document goes on
+ * from the bytes the journal recorded as committed. Only documents with a known last modified time
+ * are resumed, nothing else tells that the bytes on disk still belong to the document. Parts left
+ * behind count toward the byte budget and are trimmed before any complete copy.
+ */
+class DocumentCache {
+  private static final String TAG = "RNDocumentPicker";
+  private static final String INDEX_FILE = ".index.json";
+  private static final String PARTIAL_SUFFIX = ".tmp";
+  private static final String PART_SUFFIX = ".part";
+  private static final String JOURNAL_SUFFIX = ".journal";
+  private static final String TRASH_SUFFIX = ".trash";
+  private static final String DEFAULT_NAME = "document";
+
+  static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+  static final long DEFAULT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+  // cache hits only update access times, which are written out at most this often
+  private static final long ACCESS_PERSIST_INTERVAL_MS = 30 * 1000;
+  // hard cap of the cache while pinned entries hold it over budget, as a multiple of the budget
+  static final int PINNED_BUDGET_FACTOR = 2;
+
+  private static DocumentCache instance;
+
+  static synchronized DocumentCache get(Context context) {
+    if (instance == null) {
+      instance = new DocumentCache(DocumentPickerModule.getDocumentCacheDir(context.getApplicationContext()));
+    }
+    return instance;
+  }
+
+  static class Pending {
+    final CopyJournal journal;
+    // whether the copy is running in this process right now
+    final boolean running;
+
+    Pending(CopyJournal journal, boolean running) {
+      this.journal = journal;
+      this.running = running;
+    }
+  }
+
+  private static class CopyLock {
+    // threads holding or waiting for the lock, guarded by copyLocks
+    int holders;
+  }
+
+  static class Entry {
+    final String key;
+    final String uri;
+    final File file;
+    final long size;
+    long lastAccess;
+    // digests of the copy by ContentDigest algorithm, computed once and kept in the index
+    final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    Entry(String key, String uri, File file, long size, long lastAccess) {
+      this.key = key;
+      this.uri = uri;
+      this.file = file;
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  private final File dir;
+  private final File indexFile;
+  // access ordered, the eldest entry is the least recently used one
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // per key, removed once no thread holds or waits for them so two copies of a key never overlap
+  private final Map<String, CopyLock> copyLocks = new HashMap<>();
+  // keys of the copies running right now, their files are not orphans yet
+  private final Set<String> copying = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // keys of the entries handed out by the pending and the last resolved pick, in the order they
+  // were pinned, mapped to the generation which pinned them
+  private final LinkedHashMap<String, Integer> pinned = new LinkedHashMap<>();
+  // advanced each time a pick resolves
+  private int generation;
+  // moved aside under the monitor and deleted by emptyTrash outside of it
+  private final List<File> trash = new ArrayList<>();
+  // bytes of the parts of interrupted copies by key, in the order they were interrupted or found
+  private final LinkedHashMap<String, Long> partials = new LinkedHashMap<>();
+  private long totalBytes;
+  private long maxBytes = DEFAULT_MAX_BYTES;
+  // negative to keep copies until the byte budget evicts them
+  private long maxAgeMs = DEFAULT_MAX_AGE_MS;
+  private boolean loaded;
+  private long lastPersist;
+  // access times changed since the index was last persisted
+  private boolean accessDirty;
+
+  // reported by statsToMap, since the process started
+  private long lastSweep;
+  private int evictedCount;
+  private long evictedBytes;
+  private int releasedCount;
+  private long releasedBytes;
+  private int orphanCount;
+  private long orphanBytes;
+
+  DocumentCache(File dir) {
+    this.dir = dir;
+    this.indexFile = new File(dir, INDEX_FILE);
+  }
+
+  /**
+   * @param lastModified last modified time reported by the provider, or -1 when unknown.
+   * @param size         size reported by the provider, or -1 when unknown.
+   * @param hashAlgorithm digest to make available in {@link Entry#hashes}, or null. A fresh copy
+   *                      computes it while copying, a cached one from the local file at most once.
+   * @return the cached copy of the document, copying it first if it is not cached yet.
+   */
+  Entry getOrCopy(Context context, Uri uri, String name, long lastModified, long size, boolean verify,
+                  @Nullable String hashAlgorithm, @Nullable FileCopier.ProgressListener listener) throws IOException {
+    String key = lastModified >= 0 || size >= 0 ? keyFor(uri, lastModified, size) : uniqueKeyFor(uri);
+
+    CopyLock lock = acquireLock(key);
+    try {
+      // concurrent picks of the same document wait for a single copy
+      synchronized (lock) {
+        Entry cached = lookup(key, size);
+        emptyTrash();
+        if (cached != null) {
+          Metrics.increment(Metrics.COUNTER_CACHE_HITS);
+          if (hashAlgorithm != null && !cached.hashes.containsKey(hashAlgorithm)) {
+            cached.hashes.put(hashAlgorithm, ContentDigest.hexOf(cached.file, hashAlgorithm, FileCopier.buffer()));
+            synchronized (this) {
+              persist();
+            }
+          }
+          return cached;
+        }
+
+        // until the entry is indexed its files look like orphans to a sweep
+        copying.add(key);
+        try {
+          Entry entry = copy(context, uri, key, name, lastModified, size, verify, hashAlgorithm, listener);
+          put(entry);
+          emptyTrash();
+          return entry;
+        } finally {
+          copying.remove(key);
+        }
+      }
+    } finally {
+      releaseLock(key, lock);
+    }
+  }
+
+  private CopyLock acquireLock(String key) {
+    synchronized (copyLocks) {
+      CopyLock lock = copyLocks.get(key);
+      if (lock == null) {
+        lock = new CopyLock();
+        copyLocks.put(key, lock);
+      }
+      lock.holders++;
+      return lock;
+    }
+  }
+
+  private void releaseLock(String key, CopyLock lock) {
+    synchronized (copyLocks) {
+      if (--lock.holders == 0) {
+        copyLocks.remove(key);
+      }
+    }
+  }
+
+  private Entry copy(Context context, Uri uri, String key, String name, long lastModified, long size, boolean verify,
+                     @Nullable String hashAlgorithm, @Nullable FileCopier.ProgressListener listener) throws IOException {
+    File entryDir = new File(dir, key);
+    if (!entryDir.isDirectory() && !entryDir.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + entryDir);
+    }
+
+    File target = new File(entryDir, sanitizeName(name));
+    // keys are hex, so partial copies next to the entry directories never clash with a name
+    File partial = new File(dir, key + PART_SUFFIX);
+    final File journalFile = new File(dir, key + JOURNAL_SUFFIX);
+
+    synchronized (this) {
+      // running again, the copy accounts for its own bytes once it completes
+      partials.remove(key);
+    }
+
+    // verify only digests the local prefix, it can not tell that the document changed since
+    boolean resumable = lastModified >= 0;
+    CopyJournal previous = resumable ? CopyJournal.read(journalFile) : null;
+    long resumeFrom = 0;
+    final CopyJournal journal;
+    if (previous != null && previous.uri.equals(uri.toString()) && previous.lastModified == lastModified
+        && previous.size == size && partial.length() >= previous.committed) {
+      journal = previous;
+      resumeFrom = previous.committed;
+    } else if (resumable) {
+      journal = new CopyJournal(uri.toString(), name, lastModified, size, verify, hashAlgorithm);
+      journal.write(journalFile);
+    } else {
+      journal = null;
+      deletePartial(partial, journalFile);
+    }
+
+    long start = Metrics.start();
+    FileCopier.Result result;
+    boolean copied = false;
+    try {
+      // without a checkpoint a failed copy deletes its part
+      result = FileCopier.copy(context, uri, partial, resumeFrom, verify, hashAlgorithm, listener,
+          journal == null ? null : new FileCopier.Checkpoint() {
+            @Override
+            public void onCommitted(long bytesCommitted) throws IOException {
+              journal.committed = bytesCommitted;
+              journal.write(journalFile);
+            }
+          });
+      copied = true;
+    } catch (PickFilter.SizeLimitExceededException e) {
+      // resuming would only hit the limit again
+      deletePartial(partial, journalFile);
+      throw e;
+    } finally {
+      if (!copied && journal != null && partial.isFile()) {
+        keepPartial(key, partial.length());
+      }
+    }
+    Metrics.record(Metrics.STAGE_COPY, start);
+    Metrics.increment(Metrics.COUNTER_COPIES);
+    Metrics.add(Metrics.COUNTER_BYTES_COPIED, result.bytesCopied - result.resumedFrom);
+    if (result.resumedFrom > 0) {
+      Metrics.increment(Metrics.COUNTER_RESUMED_COPIES);
+    }
+    if (!partial.renameTo(target)) {
+      deletePartial(partial, journalFile);
+      throw new IOException("Unable to move " + partial + " into the cache");
+    }
+    journalFile.delete();
+
+    Entry entry = new Entry(key, uri.toString(), target, result.bytesCopied, System.currentTimeMillis());
+    if (result.checksum != null) {
+      entry.hashes.put(ContentDigest.SHA256, result.checksum);
+    }
+    if (result.hash != null) {
+      entry.hashes.put(hashAlgorithm, result.hash);
+    }
+    return entry;
+  }
+
+  /**
+   * @return the copies which were interrupted and can be resumed, along with those running now.
+   */
+  List<Pending> getPendingCopies() {
+    List<Pending> pending = new ArrayList<>();
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return pending;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (!name.endsWith(JOURNAL_SUFFIX)) {
+        continue;
+      }
+      String key = keyOf(name);
+      CopyJournal journal = CopyJournal.read(file);
+      if (journal != null && new File(dir, key + PART_SUFFIX).isFile()) {
+        pending.add(new Pending(journal, copying.contains(key)));
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * @return the journal of an interrupted or running copy of the document, or null.
+   */
+  @Nullable
+  CopyJournal findPendingCopy(String uri) {
+    for (Pending pending : getPendingCopies()) {
+      if (pending.journal.uri.equals(uri)) {
+        return pending.journal;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return whether this version of the document has a cached copy, without counting as an access.
+   */
+  synchronized boolean contains(Uri uri, long lastModified, long size) {
+    if (lastModified < 0 && size < 0) {
+      return false;
+    }
+    ensureLoaded();
+    // containsKey leaves the access order alone
+    return entries.containsKey(keyFor(uri, lastModified, size));
+  }
+
+  /**
+   * Unpins the entries handed out before the previous call, once a pick resolved. The app had a
+   * whole pick to read or move them, the entries of the pick which just resolved stay pinned until
+   * the next one.
+   */
+  void unpinOlder() {
+    synchronized (this) {
+      ensureLoaded();
+      Iterator<Integer> generations = pinned.values().iterator();
+      while (generations.hasNext()) {
+        if (generations.next() < generation) {
+          generations.remove();
+        }
+      }
+      generation++;
+
+      int evicted = evictedCount;
+      trimTo(maxBytes);
+      if (evictedCount != evicted) {
+        persist();
+      }
+    }
+    emptyTrash();
+  }
+
+  /**
+   * Writes out access times of cache hits which were not persisted yet, e.g. before the module is
+   * destroyed.
+   */
+  synchronized void flush() {
+    if (accessDirty) {
+      persist();
+    }
+  }
+
+  /**
+   * Deletes what an interrupted copy left behind, e.g. once it was cancelled on purpose.
+   */
+  void discardPendingCopy(Uri uri, long lastModified, long size) {
+    String key = keyFor(uri, lastModified, size);
+    if (!copying.contains(key)) {
+      synchronized (this) {
+        partials.remove(key);
+      }
+      deletePartial(new File(dir, key + PART_SUFFIX), new File(dir, key + JOURNAL_SUFFIX));
+    }
+  }
+
+  // an interrupted copy, kept for a resume as long as the budget allows
+  private void keepPartial(String key, long bytes) {
+    synchronized (this) {
+      ensureLoaded();
+      partials.put(key, bytes);
+      trimTo(maxBytes);
+    }
+    emptyTrash();
+  }
+
+  void setMaxBytes(long maxBytes) {
+    synchronized (this) {
+      ensureLoaded();
+      this.maxBytes = maxBytes;
+      trimTo(maxBytes);
+      persist();
+    }
+    emptyTrash();
+  }
+
+  synchronized long getMaxBytes() {
+    ensureLoaded();
+    return maxBytes;
+  }
+
+  void setMaxAgeMs(long maxAgeMs) {
+    synchronized (this) {
+      ensureLoaded();
+      this.maxAgeMs = maxAgeMs;
+      evictExpired(System.currentTimeMillis());
+      persist();
+    }
+    emptyTrash();
+  }
+
+  synchronized long getMaxAgeMs() {
+    ensureLoaded();
+    return maxAgeMs;
+  }
+
+  synchronized long getTotalBytes() {
+    ensureLoaded();
+    return totalBytes;
+  }
+
+  synchronized int getCount() {
+    ensureLoaded();
+    return entries.size();
+  }
+
+  /**
+   * Deletes the cached copies of a document once the app is done with them.
+   *
+   * @param uri the provider URI of the document, or the path or {@code file://} URI of its copy.
+   * @return the number of bytes freed.
+   */
+  long release(String uri) {
+    long freed = 0;
+    synchronized (this) {
+      ensureLoaded();
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (iterator.hasNext()) {
+        Entry entry = iterator.next();
+        String path = entry.file.getAbsolutePath();
+        if (uri.equals(entry.uri) || uri.equals(path) || uri.equals("file://" + path)) {
+          iterator.remove();
+          discard(entry);
+          releasedCount++;
+          releasedBytes += entry.size;
+          freed += entry.size;
+        }
+      }
+      if (freed > 0) {
+        persist();
+      }
+    }
+    emptyTrash();
+    return freed;
+  }
+
+  /**
+   * Deletes every cached copy, unlike {@link #clear} the settings of the cache are kept.
+   *
+   * @return the number of bytes freed.
+   */
+  long releaseAll() {
+    File[] files = dir.listFiles();
+    long freed;
+    synchronized (this) {
+      ensureLoaded();
+      freed = totalBytes;
+      releasedCount += entries.size();
+      releasedBytes += freed;
+      trashAll(files);
+      persist();
+    }
+    emptyTrash();
+    return freed;
+  }
+
+  /**
+   * Evicts expired copies, trims the cache to its budget and deletes files no entry refers to.
+   * Reads the whole directory, so it is meant to run on a background thread. Only the decisions
+   * are made under the monitor, listing and deleting happen outside of it so concurrent picks are
+   * not held up.
+   */
+  void sweep() {
+    long now = System.currentTimeMillis();
+    // a file created after this listing is left for the next sweep
+    File[] files = dir.listFiles();
+    List<File> orphans = new ArrayList<>();
+    synchronized (this) {
+      ensureLoaded();
+      evictExpired(now);
+
+      if (files != null) {
+        for (File file : files) {
+          String name = file.getName();
+          if (name.endsWith(TRASH_SUFFIX)) {
+            // left behind by a process killed while deleting
+            trash.add(file);
+            continue;
+          }
+          String key = keyOf(name);
+          if (name.equals(INDEX_FILE) || entries.containsKey(name) || copying.contains(key)) {
+            continue;
+          }
+          if (isResumable(key, now)) {
+            if (name.endsWith(PART_SUFFIX)) {
+              partials.put(key, file.length());
+            }
+            continue;
+          }
+          partials.remove(key);
+          orphans.add(moveToTrash(file));
+        }
+      }
+      // after the listing, so the parts found count toward the budget
+      trimTo(maxBytes);
+
+      lastSweep = now;
+      persist();
+    }
+
+    long bytes = 0;
+    for (File orphan : orphans) {
+      bytes += sizeOf(orphan);
+      deleteRecursively(orphan);
+    }
+    synchronized (this) {
+      orphanCount += orphans.size();
+      orphanBytes += bytes;
+    }
+    emptyTrash();
+  }
+
+  /**
+   * @return the current size and settings of the cache along with what sweeps and releases
+   * removed, e.g. {@code {count: 3, size: 1024, maxSize: 268435456, maxAge: 604800000,
+   * evictedCount: 0, ...}}.
+   */
+  synchronized WritableMap statsToMap() {
+    ensureLoaded();
+    WritableMap map = Arguments.createMap();
+    map.putInt("count", entries.size());
+    map.putDouble("size", totalBytes);
+    map.putDouble("maxSize", maxBytes);
+    map.putDouble("maxAge", maxAgeMs);
+    if (lastSweep > 0) {
+      map.putDouble("lastSweep", lastSweep);
+    }
+    map.putInt("evictedCount", evictedCount);
+    map.putDouble("evictedBytes", evictedBytes);
+    map.putInt("releasedCount", releasedCount);
+    map.putDouble("releasedBytes", releasedBytes);
+    map.putInt("orphanCount", orphanCount);
+    map.putDouble("orphanBytes", orphanBytes);
+    map.putInt("pendingCount", partials.size());
+    map.putDouble("pendingSize", partialBytes());
+    return map;
+  }
+
+  /**
+   * Removes every cached document, including files left behind by older versions. Copies running
+   * right now keep their files and are indexed once they complete.
+   */
+  void clear() {
+    File[] files = dir.listFiles();
+    synchronized (this) {
+      ensureLoaded();
+      trashAll(files);
+    }
+    emptyTrash();
+  }
+
+  // forgets every entry and moves the listed files aside, but those of running copies
+  private void trashAll(@Nullable File[] files) {
+    entries.clear();
+    pinned.clear();
+    partials.clear();
+    totalBytes = 0;
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(TRASH_SUFFIX)) {
+        trash.add(file);
+      } else if (!copying.contains(keyOf(name))) {
+        trash.add(moveToTrash(file));
+      }
+    }
+  }
+
+  private synchronized Entry lookup(String key, long expectedSize) {
+    ensureLoaded();
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    long length = entry.file.length();
+    if (!entry.file.isFile() || (expectedSize >= 0 && length != expectedSize)) {
+      remove(entry);
+      persist();
+      return null;
+    }
+
+    entry.lastAccess = System.currentTimeMillis();
+    pin(key);
+    // losing a few access times to a crash only makes eviction slightly less accurate
+    if (entry.lastAccess - lastPersist >= ACCESS_PERSIST_INTERVAL_MS) {
+      persist();
+    } else {
+      accessDirty = true;
+    }
+    return entry;
+  }
+
+  private synchronized void put(Entry entry) {
+    ensureLoaded();
+    Entry previous = entries.put(entry.key, entry);
+    if (previous != null) {
+      totalBytes -= previous.size;
+    }
+    totalBytes += entry.size;
+    pin(entry.key);
+    trimTo(maxBytes);
+    persist();
+  }
+
+  // a pinned key moves to the end, it was handed out again
+  private void pin(String key) {
+    pinned.remove(key);
+    pinned.put(key, generation);
+  }
+
+  // parts of interrupted copies go first, then unpinned entries least recently used first. Pinned
+  // entries stay over the budget up to the hard cap, above it they go in the order they were
+  // pinned, except the last one which is being handed out
+  private void trimTo(long budget) {
+    long pendingBytes = partialBytes();
+    Iterator<Map.Entry<String, Long>> parts = partials.entrySet().iterator();
+    while (totalBytes + pendingBytes > budget && parts.hasNext()) {
+      Map.Entry<String, Long> part = parts.next();
+      if (!copying.contains(part.getKey())) {
+        parts.remove();
+        pendingBytes -= part.getValue();
+        trash.add(moveToTrash(new File(dir, part.getKey() + PART_SUFFIX)));
+        trash.add(moveToTrash(new File(dir, part.getKey() + JOURNAL_SUFFIX)));
+        evictedCount++;
+        evictedBytes += part.getValue();
+      }
+    }
+
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (totalBytes + pendingBytes > budget && iterator.hasNext()) {
+      Entry eldest = iterator.next();
+      if (!pinned.containsKey(eldest.key)) {
+        iterator.remove();
+        evict(eldest);
+      }
+    }
+
+    long hardCap = budget > Long.MAX_VALUE / PINNED_BUDGET_FACTOR ? Long.MAX_VALUE : budget * PINNED_BUDGET_FACTOR;
+    while (totalBytes + pendingBytes > hardCap && pinned.size() > 1) {
+      String key = pinned.keySet().iterator().next();
+      Entry entry = entries.remove(key);
+      if (entry == null) {
+        pinned.remove(key);
+      } else {
+        evict(entry);
+      }
+    }
+  }
+
+  private void evictExpired(long now) {
+    if (maxAgeMs < 0) {
+      return;
+    }
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (now - entry.lastAccess > maxAgeMs && !pinned.containsKey(entry.key)) {
+        iterator.remove();
+        evict(entry);
+      }
+    }
+  }
+
+  private long partialBytes() {
+    long bytes = 0;
+    for (long part : partials.values()) {
+      bytes += part;
+    }
+    return bytes;
+  }
+
+  private void evict(Entry entry) {
+    discard(entry);
+    evictedCount++;
+    evictedBytes += entry.size;
+  }
+
+  private void remove(Entry entry) {
+    entries.remove(entry.key);
+    discard(entry);
+  }
+
+  // the entry is already out of the map
+  private void discard(Entry entry) {
+    totalBytes -= entry.size;
+    pinned.remove(entry.key);
+    trash.add(moveToTrash(entry.file.getParentFile()));
+  }
+
+  // a rename is cheap enough for the monitor, and a copy recreating the key can not lose its files
+  private File moveToTrash(File file) {
+    File target = new File(dir, file.getName() + '.' + System.nanoTime() + TRASH_SUFFIX);
+    return file.renameTo(target) ? target : file;
+  }
+
+  private void emptyTrash() {
+    List<File> files;
+    synchronized (this) {
+      if (trash.isEmpty()) {
+        return;
+      }
+      files = new ArrayList<>(trash);
+      trash.clear();
+    }
+    for (File file : files) {
+      deleteRecursively(file);
+    }
+  }
+
+  // interrupted copies are kept as long as cached ones would be
+  private boolean isResumable(String key, long now) {
+    File journal = new File(dir, key + JOURNAL_SUFFIX);
+    return journal.isFile() && new File(dir, key + PART_SUFFIX).isFile()
+        && (maxAgeMs < 0 || now - journal.lastModified() <= maxAgeMs);
+  }
+
+  // the key a file in the cache directory belongs to, e.g. the key of "<key>.journal.tmp"
+  private static String keyOf(String name) {
+    String key = strip(name, PARTIAL_SUFFIX);
+    key = strip(key, JOURNAL_SUFFIX);
+    return strip(key, PART_SUFFIX);
+  }
+
+  private static String strip(String name, String suffix) {
+    return name.endsWith(suffix) ? name.substring(0, name.length() - suffix.length()) : name;
+  }
+
+  private static void deletePartial(File partial, File journal) {
+    partial.delete();
+    journal.delete();
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+
+    if (!indexFile.isFile()) {
+      return;
+    }
+
+    try {
+      JSONObject index = new JSONObject(readFile(indexFile));
+      maxBytes = index.optLong("maxBytes", DEFAULT_MAX_BYTES);
+      maxAgeMs = index.optLong("maxAgeMs", DEFAULT_MAX_AGE_MS);
+      JSONArray array = index.getJSONArray("entries");
+      for (int i = 0; i < array.length(); ++i) {
+        JSONObject json = array.getJSONObject(i);
+        String key = json.getString("key");
+        File file = new File(new File(dir, key), json.getString("name"));
+        if (!file.isFile()) {
+          continue;
+        }
+        Entry entry = new Entry(key, json.getString("uri"), file, file.length(), json.optLong("lastAccess", 0));
+        JSONObject hashes = json.optJSONObject("hashes");
+        if (hashes != null) {
+          Iterator<String> algorithms = hashes.keys();
+          while (algorithms.hasNext()) {
+            String algorithm = algorithms.next();
+            entry.hashes.put(algorithm, hashes.getString(algorithm));
+          }
+        }
+        entries.put(key, entry);
+        totalBytes += entry.size;
+      }
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Discarding unreadable document cache index", e);
+      entries.clear();
+      totalBytes = 0;
+    }
+  }
+
+  private void persist() {
+    lastPersist = System.currentTimeMillis();
+    accessDirty = false;
+    List<Entry> snapshot = new ArrayList<>(entries.values());
+    try {
+      JSONArray array = new JSONArray();
+      for (Entry entry : snapshot) {
+        JSONObject json = new JSONObject();
+        json.put("key", entry.key);
+        json.put("uri", entry.uri);
+        json.put("name", entry.file.getName());
+        json.put("lastAccess", entry.lastAccess);
+        if (!entry.hashes.isEmpty()) {
+          json.put("hashes", new JSONObject(entry.hashes));
+        }
+        array.put(json);
+      }
+      JSONObject index = new JSONObject();
+      index.put("maxBytes", maxBytes);
+      index.put("maxAgeMs", maxAgeMs);
+      index.put("entries", array);
+
+      File partial = new File(dir, INDEX_FILE + PARTIAL_SUFFIX);
+      FileOutputStream out = new FileOutputStream(partial);
+      try {
+        out.write(index.toString().getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+      if (!partial.renameTo(indexFile)) {
+        Log.w(TAG, "Unable to replace document cache index");
+      }
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Unable to persist document cache index", e);
+    }
+  }
+
+  static String keyFor(Uri uri, long lastModified, long size) {
+    return digest(uri.toString() + '\n' + lastModified + '\n' + size);
+  }
+
+  // a key no later pick of the document maps to, its copies are never served again
+  private static String uniqueKeyFor(Uri uri) {
+    return digest(uri.toString() + '\n' + UUID.randomUUID());
+  }
+
+  private static String digest(String source) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+        sb.append(Character.forDigit(b & 0xf, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      // both are mandatory on every Android version
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String sanitizeName(String name) {
+    if (name == null || name.isEmpty()) {
+      return DEFAULT_NAME;
+    }
+    String sanitized = name.replace('/', '_');
+    if (sanitized.equals(".") || sanitized.equals("..")) {
+      return DEFAULT_NAME;
+    }
+    return sanitized;
+  }
+
+  static String readFile(File file) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      byte[] bytes = new byte[(int) file.length()];
+      int offset = 0;
+      while (offset < bytes.length) {
+        int read = in.read(bytes, offset, bytes.length - offset);
+        if (read < 0) {
+          break;
+        }
+        offset += read;
+      }
+      return new String(bytes, 0, offset, "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  static long sizeOf(File file) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      return file.length();
+    }
+    long size = 0;
+    for (File child : children) {
+      size += sizeOf(child);
+    }
+    return size;
+  }
+
+  static void deleteRecursively(File file) {
+    if (file == null) {
+      return;
+    }
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -5,12 +5,12 @@ import android.content.ActivityNotFoundException;
 import android.content.ClipData;
 import android.content.ContentResolver;
 import android.content.Intent;
+import android.content.UriPermission;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.provider.DocumentsContract;
-import android.provider.OpenableColumns;
+import android.os.ParcelFileDescriptor;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
@@ -26,19 +26,23 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import android.content.Context;
 import android.provider.MediaStore;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import android.content.ContentUris;
 import android.os.Environment;
 import android.annotation.TargetApi;
 
@@ -50,6 +54,7 @@ import android.annotation.TargetApi;
 public class DocumentPickerModule extends ReactContextBaseJavaModule {
   private static final String NAME = "RNDocumentPicker";
   private static final int READ_REQUEST_CODE = 41;
+  private static final int MAX_PICK_SESSIONS = 64;
 
   private static final String E_ACTIVITY_DOES_NOT_EXIST = "ACTIVITY_DOES_NOT_EXIST";
   private static final String E_FAILED_TO_SHOW_PICKER = "FAILED_TO_SHOW_PICKER";
@@ -58,14 +63,95 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
   private static final String E_UNKNOWN_ACTIVITY_RESULT = "UNKNOWN_ACTIVITY_RESULT";
   private static final String E_INVALID_DATA_RETURNED = "INVALID_DATA_RETURNED";
   private static final String E_UNEXPECTED_EXCEPTION = "UNEXPECTED_EXCEPTION";
+  private static final String E_UNABLE_TO_MATERIALIZE = "UNABLE_TO_MATERIALIZE";
+  private static final String E_COPY_CANCELED = "COPY_CANCELED";
+  private static final String E_READ_FAILED = "READ_FAILED";
+  private static final String E_TOO_MANY_PICKERS = "TOO_MANY_PICKERS";
+  private static final String E_MODULE_DESTROYED = "MODULE_DESTROYED";
+  private static final String E_PERMISSION_REVOKED = "PERMISSION_REVOKED";
+  private static final String E_DOCUMENT_NOT_FOUND = "DOCUMENT_NOT_FOUND";
+  private static final String E_UNSUPPORTED = "UNSUPPORTED";
+  private static final String E_DIRECTORY_READ_FAILED = "DIRECTORY_READ_FAILED";
+  private static final String E_THUMBNAIL_FAILED = "THUMBNAIL_FAILED";
 
   private static final String OPTION_TYPE = "type";
   private static final String OPTION_MULIPLE = "multiple";
+  private static final String OPTION_CONCURRENCY = "concurrency";
+  private static final String OPTION_STREAM = "stream";
+  private static final String OPTION_STREAM_ID = "streamId";
+  private static final String OPTION_VERIFY_COPY = "verifyCopy";
+  private static final String OPTION_MAX_SIZE = "maxSize";
+  private static final String OPTION_MIN_SIZE = "minSize";
+  private static final String OPTION_MAX_COUNT = "maxCount";
+  private static final String OPTION_MAX_AGE = "maxAge";
+  private static final String OPTION_COMPACT = "compact";
+  private static final String OPTION_BATCH_SIZE = "batchSize";
+  private static final String OPTION_COPY_TO = "copyTo";
+  private static final String OPTION_EXTENDED_METADATA = "extendedMetadata";
+  private static final String OPTION_MODE = "mode";
+  private static final String OPTION_HASH = "hash";
+  private static final String OPTION_MIME_TYPES = "mimeTypes";
+  private static final String OPTION_EXTENSIONS = "extensions";
+  private static final String OPTION_MAX_DEPTH = "maxDepth";
+  private static final String OPTION_PAGE_SIZE = "pageSize";
+
+  private static final String MODE_OPEN = "open";
+
+  private static final String COPY_TO_LAZY = "lazy";
+
+  private static final int MAX_CONCURRENCY = 8;
+  private static final int DEFAULT_CONCURRENCY = 4;
+  private static final int DEFAULT_PAGE_SIZE = 200;
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int DEFAULT_BATCH_SIZE = 500;
+  private static final int MAX_BATCH_SIZE = 2000;
+  private static final int MAX_THUMBNAIL_SIZE = 1024;
 
   private static final String FIELD_URI = "uri";
   private static final String FIELD_NAME = "name";
   private static final String FIELD_TYPE = "type";
   private static final String FIELD_SIZE = "size";
+  private static final String FIELD_LAST_MODIFIED = "lastModified";
+  private static final String FIELD_FLAGS = "flags";
+  private static final String FIELD_DOCUMENT_ID = "documentId";
+  private static final String FIELD_IS_VIRTUAL = "isVirtual";
+  private static final String FIELD_SUPPORTS_THUMBNAIL = "supportsThumbnail";
+  private static final String FIELD_CONTENT_URI = "contentUri";
+  private static final String FIELD_OPENED_AT = "openedAt";
+  private static final String FIELD_CHANGED = "changed";
+  private static final String FIELD_HASH = "hash";
+  private static final String FIELD_WIDTH = "width";
+  private static final String FIELD_HEIGHT = "height";
+  private static final String FIELD_PATH = "path";
+  private static final String FIELD_DEPTH = "depth";
+  private static final String FIELD_ENTRIES = "entries";
+  private static final String FIELD_DIRECTORIES = "directories";
+  private static final String FIELD_STREAM_ID = "streamId";
+  private static final String FIELD_INDEX = "index";
+  private static final String FIELD_TOTAL = "total";
+  private static final String FIELD_DOCUMENT = "document";
+  private static final String FIELD_HANDLE = "handle";
+  private static final String FIELD_SEEKABLE = "seekable";
+  private static final String FIELD_IPC = "ipc";
+  private static final String FIELD_LAST_PICK = "lastPick";
+  private static final String FIELD_COUNTERS = "counters";
+  private static final String FIELD_STAGES = "stages";
+  private static final String FIELD_RESOLVERS = "resolvers";
+  private static final String FIELD_JOB_ID = "jobId";
+  private static final String FIELD_BYTES_COPIED = "bytesCopied";
+  private static final String FIELD_TOTAL_BYTES = "totalBytes";
+  private static final String FIELD_BYTES_PER_SECOND = "bytesPerSecond";
+  private static final String FIELD_REJECTED = "rejected";
+  private static final String FIELD_REASON = "reason";
+  private static final String FIELD_BATCHES = "batches";
+  private static final String FIELD_UPDATED_AT = "updatedAt";
+  private static final String FIELD_RUNNING = "running";
+
+  private static final String EVENT_DOCUMENT = "RNDocumentPickerDocument";
+  private static final String EVENT_COMPLETE = "RNDocumentPickerComplete";
+  private static final String EVENT_COPY_PROGRESS = "RNDocumentPickerCopyProgress";
+  private static final String EVENT_DIRECTORY_PAGE = "RNDocumentPickerDirectoryPage";
+  private static final String EVENT_BATCH = "RNDocumentPickerBatch";
 
   public static final String DOCUMENTS_DIR = "documents";
   public static final String AUTHORITY =  "YOUR_AUTHORITY.provider";
@@ -73,11 +159,9 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
   private final ActivityEventListener activityEventListener = new BaseActivityEventListener() {
     @Override
     public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
-      if (requestCode == READ_REQUEST_CODE) {
-        if (promise != null) {
-          onShowActivityResult(resultCode, data, promise);
-          promise = null;
-        }
+      PickSessions.Session session = sessions.take(requestCode);
+      if (session != null) {
+        onShowActivityResult(resultCode, data, session.promise, session.options);
       }
     }
   };
@@ -91,19 +175,92 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
     return array;
   }
 
-  private Promise promise;
+  static class PickOptions {
+    int concurrency = DEFAULT_CONCURRENCY;
+    boolean stream;
+    int streamId;
+    // results go out as columnar batch events instead of one map per document
+    boolean compact;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    boolean verifyCopy;
+    // metadata only, documents without a local path are copied later through materialize
+    boolean lazyCopy;
+    // copies are registered here to report progress and be cancellable, untracked when null
+    @Nullable
+    CopyJobs copyJobs;
+    boolean copyCancelled;
+    boolean extendedMetadata;
+    // ACTION_OPEN_DOCUMENT, keeps read access across restarts and records the document as recent
+    boolean persistPermission;
+    // ACTION_OPEN_DOCUMENT_TREE, the result is the tree URI itself
+    boolean directory;
+    // ContentDigest algorithm of the hash reported for each document, null for none
+    @Nullable
+    String hashAlgorithm;
+    // hashes computed while copying, by document uri, so resolveDocument does not read the copy again
+    final Map<String, String> copyHashes = new ConcurrentHashMap<>();
+    // size, extension and count limits checked before a document is copied or hashed
+    final PickFilter filter = new PickFilter();
+    // documents whose cached copy was returned without reading them again, by uri string
+    final Set<String> cachedCopies = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // documents of unknown size whose copy was aborted for exceeding filter.maxSize
+    final Set<String> oversized = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final IpcCounter ipc = new IpcCounter();
+    // paths resolved ahead of time for a whole selection, keyed by uri string
+    Map<String, String> prefetchedPaths = Collections.emptyMap();
+  }
+
+  private static boolean hasOption(ReadableMap args, String key) {
+    return args.hasKey(key) && !args.isNull(key);
+  }
+
+  private final PickSessions sessions = new PickSessions(READ_REQUEST_CODE, MAX_PICK_SESSIONS);
+  private volatile IpcCounter lastPickIpc = new IpcCounter();
   private Context mContext;
+  private final ResolutionPipeline pipeline = new ResolutionPipeline(MAX_CONCURRENCY);
+  private final DocumentReaders readers = new DocumentReaders();
+  private final CopyJobs copyJobs = new CopyJobs(new CopyJobs.Listener() {
+    @Override
+    public void onProgress(CopyJobs.Job job, long bytesCopied, long totalBytes, double bytesPerSecond) {
+      WritableMap event = Arguments.createMap();
+      event.putInt(FIELD_JOB_ID, job.id);
+      event.putString(FIELD_URI, job.uri);
+      event.putDouble(FIELD_BYTES_COPIED, bytesCopied);
+      event.putDouble(FIELD_TOTAL_BYTES, totalBytes);
+      event.putDouble(FIELD_BYTES_PER_SECOND, bytesPerSecond);
+      sendEvent(EVENT_COPY_PROGRESS, event);
+    }
+  });
 
   public DocumentPickerModule(ReactApplicationContext reactContext) {
     super(reactContext);
     mContext = reactContext;
     reactContext.addActivityEventListener(activityEventListener);
+
+    // copies of earlier sessions, expired or left half written by a killed process
+    pipeline.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          DocumentCache.get(mContext).sweep();
+        } catch (RuntimeException e) {
+          Log.w(NAME, "Unable to sweep the document cache", e);
+        }
+      }
+    });
   }
 
   @Override
   public void onCatalystInstanceDestroy() {
     super.onCatalystInstanceDestroy();
     getReactApplicationContext().removeActivityEventListener(activityEventListener);
+    for (PickSessions.Session session : sessions.takeAll()) {
+      session.promise.reject(E_MODULE_DESTROYED, "Document picker was destroyed before the picker returned");
+    }
+    copyJobs.cancelAll();
+    readers.closeAll();
+    DocumentCache.get(mContext).flush();
+    pipeline.shutdown();
   }
 
   @Override
@@ -120,10 +277,71 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
       return;
     }
 
-    this.promise = promise;
+    PickOptions pickOptions = new PickOptions();
+    pickOptions.copyJobs = copyJobs;
+    if (hasOption(args, OPTION_CONCURRENCY)) {
+      pickOptions.concurrency = args.getInt(OPTION_CONCURRENCY);
+    }
+    if (hasOption(args, OPTION_STREAM)) {
+      pickOptions.stream = args.getBoolean(OPTION_STREAM);
+    }
+    if (hasOption(args, OPTION_STREAM_ID)) {
+      pickOptions.streamId = args.getInt(OPTION_STREAM_ID);
+    }
+    if (hasOption(args, OPTION_COMPACT)) {
+      pickOptions.compact = args.getBoolean(OPTION_COMPACT);
+    }
+    if (hasOption(args, OPTION_BATCH_SIZE)) {
+      pickOptions.batchSize = Math.max(1, Math.min(args.getInt(OPTION_BATCH_SIZE), MAX_BATCH_SIZE));
+    }
+    if (hasOption(args, OPTION_VERIFY_COPY)) {
+      pickOptions.verifyCopy = args.getBoolean(OPTION_VERIFY_COPY);
+    }
+    if (hasOption(args, OPTION_COPY_TO)) {
+      pickOptions.lazyCopy = COPY_TO_LAZY.equals(args.getString(OPTION_COPY_TO));
+    }
+    if (hasOption(args, OPTION_EXTENDED_METADATA)) {
+      pickOptions.extendedMetadata = args.getBoolean(OPTION_EXTENDED_METADATA);
+    }
+    if (hasOption(args, OPTION_HASH)) {
+      String algorithm = args.getString(OPTION_HASH);
+      if (!ContentDigest.isSupported(algorithm)) {
+        promise.reject(E_UNEXPECTED_EXCEPTION, "Unsupported hash algorithm: " + algorithm);
+        return;
+      }
+      pickOptions.hashAlgorithm = algorithm;
+    }
+    if (hasOption(args, OPTION_MAX_SIZE)) {
+      pickOptions.filter.maxSize = (long) args.getDouble(OPTION_MAX_SIZE);
+    }
+    if (hasOption(args, OPTION_MIN_SIZE)) {
+      pickOptions.filter.minSize = (long) args.getDouble(OPTION_MIN_SIZE);
+    }
+    if (hasOption(args, OPTION_EXTENSIONS)) {
+      pickOptions.filter.setExtensions(Arrays.asList(readableArrayToStringArray(args.getArray(OPTION_EXTENSIONS))));
+    }
+    if (hasOption(args, OPTION_MAX_COUNT)) {
+      pickOptions.filter.maxCount = args.getInt(OPTION_MAX_COUNT);
+    }
+    if (hasOption(args, OPTION_MODE)) {
+      pickOptions.persistPermission = MODE_OPEN.equals(args.getString(OPTION_MODE))
+          && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    PickSessions.Session session = sessions.open(promise, pickOptions);
+    if (session == null) {
+      promise.reject(E_TOO_MANY_PICKERS, "Too many document pickers are already open");
+      return;
+    }
 
     try {
-      Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+      Intent intent;
+      if (pickOptions.persistPermission) {
+        intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+      } else {
+        intent = new Intent(Intent.ACTION_GET_CONTENT);
+      }
       intent.addCategory(Intent.CATEGORY_OPENABLE);
 
       intent.setType("*/*");
@@ -150,18 +368,574 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
         intent = Intent.createChooser(intent, null);
       }
 
-      currentActivity.startActivityForResult(intent, READ_REQUEST_CODE, Bundle.EMPTY);
+      currentActivity.startActivityForResult(intent, session.requestCode, Bundle.EMPTY);
     } catch (ActivityNotFoundException e) {
-      this.promise.reject(E_UNABLE_TO_OPEN_FILE_TYPE, e.getLocalizedMessage());
-      this.promise = null;
+      sessions.take(session.requestCode);
+      promise.reject(E_UNABLE_TO_OPEN_FILE_TYPE, e.getLocalizedMessage());
     } catch (Exception e) {
       e.printStackTrace();
-      this.promise.reject(E_FAILED_TO_SHOW_PICKER, e.getLocalizedMessage());
-      this.promise = null;
+      sessions.take(session.requestCode);
+      promise.reject(E_FAILED_TO_SHOW_PICKER, e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Lets the user pick a directory and resolves with {@code {uri}}, the tree URI to pass to
+   * {@link #readDirectory}. Read access to the tree is persisted.
+   */
+  @ReactMethod
+  public void pickDirectory(Promise promise) {
+    Activity currentActivity = getCurrentActivity();
+
+    if (currentActivity == null) {
+      promise.reject(E_ACTIVITY_DOES_NOT_EXIST, "Current activity does not exist");
+      return;
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      promise.reject(E_UNSUPPORTED, "Picking a directory requires API level 21");
+      return;
+    }
+
+    PickOptions pickOptions = new PickOptions();
+    pickOptions.directory = true;
+    PickSessions.Session session = sessions.open(promise, pickOptions);
+    if (session == null) {
+      promise.reject(E_TOO_MANY_PICKERS, "Too many document pickers are already open");
+      return;
+    }
+
+    try {
+      Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+      intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+      currentActivity.startActivityForResult(intent, session.requestCode, Bundle.EMPTY);
+    } catch (ActivityNotFoundException e) {
+      sessions.take(session.requestCode);
+      promise.reject(E_UNSUPPORTED, e.getLocalizedMessage());
+    } catch (Exception e) {
+      e.printStackTrace();
+      sessions.take(session.requestCode);
+      promise.reject(E_FAILED_TO_SHOW_PICKER, e.getLocalizedMessage());
+    }
+  }
+
+  /**
+   * Lists the documents of a tree returned by {@link #pickDirectory}. Entries are sent in pages as
+   * {@code RNDocumentPickerDirectoryPage} events tagged with {@code streamId}, the promise resolves
+   * with {@code {total, directories}} once the whole tree was walked.
+   */
+  @ReactMethod
+  public void readDirectory(String treeUriString, ReadableMap args, final Promise promise) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      promise.reject(E_UNSUPPORTED, "Reading a directory requires API level 21");
+      return;
+    }
+
+    DirectoryWalker.Filter filter = new DirectoryWalker.Filter();
+    if (hasOption(args, OPTION_MIME_TYPES)) {
+      filter.setMimeTypes(Arrays.asList(readableArrayToStringArray(args.getArray(OPTION_MIME_TYPES))));
+    }
+    if (hasOption(args, OPTION_EXTENSIONS)) {
+      filter.setExtensions(Arrays.asList(readableArrayToStringArray(args.getArray(OPTION_EXTENSIONS))));
+    }
+    if (hasOption(args, OPTION_MAX_DEPTH)) {
+      filter.maxDepth = args.getInt(OPTION_MAX_DEPTH);
+    }
+    int concurrency = hasOption(args, OPTION_CONCURRENCY)
+        ? Math.min(args.getInt(OPTION_CONCURRENCY), MAX_CONCURRENCY)
+        : DEFAULT_CONCURRENCY;
+    int pageSize = hasOption(args, OPTION_PAGE_SIZE)
+        ? Math.min(args.getInt(OPTION_PAGE_SIZE), MAX_PAGE_SIZE)
+        : DEFAULT_PAGE_SIZE;
+    final int streamId = hasOption(args, OPTION_STREAM_ID) ? args.getInt(OPTION_STREAM_ID) : 0;
+
+    final IpcCounter ipc = new IpcCounter();
+    try {
+      new DirectoryWalker(mContext, pipeline, Uri.parse(treeUriString), filter, concurrency, pageSize, ipc,
+          new DirectoryWalker.Listener() {
+            @Override
+            public void onPage(List<DirectoryWalker.Entry> entries) {
+              WritableArray array = Arguments.createArray();
+              for (DirectoryWalker.Entry entry : entries) {
+                array.pushMap(directoryEntryToMap(entry));
+              }
+              WritableMap event = Arguments.createMap();
+              event.putInt(FIELD_STREAM_ID, streamId);
+              event.putArray(FIELD_ENTRIES, array);
+              sendEvent(EVENT_DIRECTORY_PAGE, event);
+            }
+
+            @Override
+            public void onComplete(int total, int directories) {
+              lastPickIpc = ipc;
+              WritableMap summary = Arguments.createMap();
+              summary.putInt(FIELD_TOTAL, total);
+              summary.putInt(FIELD_DIRECTORIES, directories);
+              promise.resolve(summary);
+            }
+
+            @Override
+            public void onError(Exception e) {
+              promise.reject(E_DIRECTORY_READ_FAILED, e.getLocalizedMessage(), e);
+            }
+          }).start();
+    } catch (Exception e) {
+      promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
+    }
+  }
+
+  private static WritableMap directoryEntryToMap(DirectoryWalker.Entry entry) {
+    WritableMap map = Arguments.createMap();
+    map.putString(FIELD_URI, entry.uri);
+    map.putString(FIELD_NAME, entry.name);
+    map.putString(FIELD_TYPE, entry.mimeType);
+    if (entry.size >= 0) {
+      map.putDouble(FIELD_SIZE, entry.size);
+    }
+    if (entry.lastModified >= 0) {
+      map.putDouble(FIELD_LAST_MODIFIED, entry.lastModified);
+    }
+    map.putString(FIELD_PATH, entry.path);
+    map.putInt(FIELD_DEPTH, entry.depth);
+    return map;
+  }
+
+  /**
+   * Resolves with a local path for a document returned by a lazy pick, copying it into the
+   * document cache in the background if the provider does not expose a path.
+   */
+  @ReactMethod
+  public void materialize(final String uriString, final Promise promise) {
+    final Uri uri = Uri.parse(uriString);
+    final PickOptions options = new PickOptions();
+    options.copyJobs = copyJobs;
+
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        String path = getLocalPath(mContext, uri, null, options);
+        if (path == null && !options.copyCancelled
+            && ContentResolver.SCHEME_CONTENT.equalsIgnoreCase(uri.getScheme())) {
+          // only a few resolvers copy, every other provider without a path is copied here
+          path = cacheDocument(mContext, uri, DocumentRow.query(mContext, uri, options.ipc), options);
+        }
+        if (path != null) {
+          promise.resolve(path);
+        } else if (options.copyCancelled) {
+          promise.reject(E_COPY_CANCELED, "Copy of " + uriString + " was cancelled");
+        } else {
+          promise.reject(E_UNABLE_TO_MATERIALIZE, "Unable to copy " + uriString + " to a local file");
+        }
+      }
+    });
+  }
+
+  /**
+   * Cancels a running copy by the job id reported in its progress events, the partial file is
+   * deleted. Resolves with whether a running copy was found.
+   */
+  @ReactMethod
+  public void cancelCopy(int jobId, Promise promise) {
+    promise.resolve(copyJobs.cancel(jobId));
+  }
+
+  /**
+   * Resolves with the copies into the document cache which did not complete, e.g. because the
+   * process died, as {@code [{uri, name, size, bytesCopied, updatedAt, running}]}. Running ones
+   * are listed too so JS can follow them through their progress events.
+   */
+  @ReactMethod
+  public void getPendingCopies(final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        WritableArray array = Arguments.createArray();
+        for (DocumentCache.Pending pending : DocumentCache.get(mContext).getPendingCopies()) {
+          CopyJournal journal = pending.journal;
+          WritableMap map = Arguments.createMap();
+          map.putString(FIELD_URI, journal.uri);
+          if (journal.name != null) {
+            map.putString(FIELD_NAME, journal.name);
+          }
+          if (journal.size >= 0) {
+            map.putDouble(FIELD_SIZE, journal.size);
+          }
+          map.putDouble(FIELD_BYTES_COPIED, journal.committed);
+          map.putDouble(FIELD_UPDATED_AT, journal.updatedAt);
+          map.putBoolean(FIELD_RUNNING, pending.running);
+          array.pushMap(map);
+        }
+        promise.resolve(array);
+      }
+    });
+  }
+
+  /**
+   * Goes on with a pending copy from the bytes it committed, or from the start when the provider
+   * can not seek or reports another version of the document, and resolves with the local path once
+   * it completes. A copy still running is waited for instead of being started twice.
+   */
+  @ReactMethod
+  public void resumeCopy(final String uriString, final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        DocumentCache cache = DocumentCache.get(mContext);
+        CopyJournal journal = cache.findPendingCopy(uriString);
+        if (journal == null) {
+          promise.reject(E_DOCUMENT_NOT_FOUND, "No pending copy of " + uriString);
+          return;
+        }
+
+        Uri uri = Uri.parse(uriString);
+        PickOptions options = new PickOptions();
+        options.copyJobs = copyJobs;
+        options.verifyCopy = journal.verify;
+        options.hashAlgorithm = journal.hashAlgorithm;
+
+        DocumentRow row = DocumentRow.query(mContext, uri, options.ipc);
+        if (row.displayName == null && row.size < 0) {
+          // kept, the permission may come back with the next pick of the document
+          promise.reject(E_UNABLE_TO_MATERIALIZE, "Unable to read " + uriString);
+          return;
+        }
+        if (row.lastModified < 0 || row.lastModified != journal.lastModified || row.size != journal.size) {
+          // the committed bytes may belong to another version, start over
+          cache.discardPendingCopy(uri, journal.lastModified, journal.size);
+        }
+
+        String path;
+        try {
+          path = cacheDocument(mContext, cache, uri, row, options);
+        } catch (RuntimeException e) {
+          // e.g. the grant of an earlier process is gone
+          promise.reject(E_UNABLE_TO_MATERIALIZE, e.getLocalizedMessage(), e);
+          return;
+        }
+        if (path != null) {
+          promise.resolve(path);
+        } else if (options.copyCancelled) {
+          promise.reject(E_COPY_CANCELED, "Copy of " + uriString + " was cancelled");
+        } else {
+          promise.reject(E_UNABLE_TO_MATERIALIZE, "Unable to copy " + uriString + " to a local file");
+        }
+      }
+    });
+  }
+
+  /**
+   * Opens a document for chunked reads with {@link #read}, resolves with
+   * {@code {handle, size, seekable}}. Size is -1 and reads have to be sequential when the
+   * provider streams the document through a pipe.
+   */
+  @ReactMethod
+  public void open(final String uriString, final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          DocumentReaders.Reader reader = readers.open(mContext, Uri.parse(uriString));
+          WritableMap result = Arguments.createMap();
+          result.putInt(FIELD_HANDLE, reader.handle);
+          result.putDouble(FIELD_SIZE, reader.size);
+          result.putBoolean(FIELD_SEEKABLE, reader.seekable);
+          promise.resolve(result);
+        } catch (Exception e) {
+          promise.reject(E_READ_FAILED, e.getLocalizedMessage(), e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Resolves with up to {@code length} bytes (capped at {@link DocumentReaders#MAX_READ_LENGTH})
+   * starting at {@code offset}, encoded as base64. An empty string means end of file.
+   */
+  @ReactMethod
+  public void read(final int handle, final double offset, final int length, final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          promise.resolve(readers.get(handle).read((long) offset, length));
+        } catch (Exception e) {
+          promise.reject(E_READ_FAILED, e.getLocalizedMessage(), e);
+        }
+      }
+    });
+  }
+
+  @ReactMethod
+  public void close(int handle, Promise promise) {
+    promise.resolve(readers.close(handle));
+  }
+
+  /**
+   * Resolves with the documents picked in {@code mode: 'open'} whose permission is still held,
+   * most recently opened first.
+   */
+  @ReactMethod
+  public void getRecentDocuments(final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        RecentDocuments recent = RecentDocuments.get(mContext);
+        Set<String> granted = getPersistedReadUris();
+        List<String> revoked = new ArrayList<>();
+
+        WritableArray results = Arguments.createArray();
+        for (RecentDocuments.Entry entry : recent.list()) {
+          if (granted.contains(entry.uri)) {
+            results.pushMap(recentEntryToMap(entry));
+          } else {
+            revoked.add(entry.uri);
+          }
+        }
+        recent.removeAll(revoked);
+        promise.resolve(results);
+      }
+    });
+  }
+
+  /**
+   * Returns the metadata of a recent document without showing the picker. The indexed metadata is
+   * revalidated with a single query and refreshed when the provider reports a different last
+   * modified time or size, {@code changed} tells JS whether that happened.
+   */
+  @ReactMethod
+  public void reopen(final String uriString, final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        RecentDocuments recent = RecentDocuments.get(mContext);
+        if (!getPersistedReadUris().contains(uriString)) {
+          recent.removeAll(Collections.singleton(uriString));
+          promise.reject(E_PERMISSION_REVOKED, "No persisted permission to read " + uriString);
+          return;
+        }
+
+        Uri uri = Uri.parse(uriString);
+        DocumentRow row = DocumentRow.query(mContext, uri, new IpcCounter());
+        if (row.displayName == null && row.size < 0) {
+          // a failed query may be a timeout or a provider still starting, only drop the entry
+          // and its permission once the provider says the document is gone
+          if (!row.missing) {
+            try {
+              ParcelFileDescriptor pfd = mContext.getContentResolver().openFileDescriptor(uri, "r");
+              if (pfd != null) {
+                pfd.close();
+              }
+              promise.reject(E_READ_FAILED, "Unable to read " + uriString);
+              return;
+            } catch (FileNotFoundException | SecurityException e) {
+              // gone, or the permission was revoked along with it
+            } catch (IOException | RuntimeException e) {
+              promise.reject(E_READ_FAILED, "Unable to read " + uriString, e);
+              return;
+            }
+          }
+          recent.removeAll(Collections.singleton(uriString));
+          promise.reject(E_DOCUMENT_NOT_FOUND, "Document " + uriString + " is no longer available");
+          return;
+        }
+
+        RecentDocuments.Entry previous = recent.find(uriString);
+        boolean changed = previous == null
+            || previous.lastModified != row.lastModified
+            || previous.size != row.size;
+        RecentDocuments.Entry entry = RecentDocuments.Entry.fromRow(uriString, row);
+        recent.record(entry);
+
+        WritableMap map = recentEntryToMap(entry);
+        map.putBoolean(FIELD_CHANGED, changed);
+        promise.resolve(map);
+      }
+    });
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private void persistPermission(Uri uri, DocumentRow row) {
+    try {
+      mContext.getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+      RecentDocuments.get(mContext).record(RecentDocuments.Entry.fromRow(uri.toString(), row));
+    } catch (SecurityException e) {
+      Log.w(NAME, "Provider did not grant a persistable permission for " + uri, e);
+    }
+  }
+
+  private Set<String> getPersistedReadUris() {
+    Set<String> uris = new HashSet<>();
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+      return uris;
+    }
+    for (UriPermission permission : mContext.getContentResolver().getPersistedUriPermissions()) {
+      if (permission.isReadPermission()) {
+        uris.add(permission.getUri().toString());
+      }
+    }
+    return uris;
+  }
+
+  private static WritableMap recentEntryToMap(RecentDocuments.Entry entry) {
+    WritableMap map = Arguments.createMap();
+    map.putString(FIELD_URI, entry.uri);
+    map.putString(FIELD_CONTENT_URI, entry.uri);
+    map.putString(FIELD_NAME, entry.name);
+    map.putString(FIELD_TYPE, entry.type);
+    if (entry.size >= 0) {
+      map.putDouble(FIELD_SIZE, entry.size);
+    }
+    if (entry.lastModified >= 0) {
+      map.putDouble(FIELD_LAST_MODIFIED, entry.lastModified);
+    }
+    map.putDouble(FIELD_OPENED_AT, entry.openedAt);
+    return map;
+  }
+
+  /**
+   * Runs a task on the pipeline, the promise is rejected if the task throws instead of the
+   * exception taking the process down with the worker.
+   */
+  private void runInBackground(final Promise promise, final Runnable task) {
+    try {
+      pipeline.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            task.run();
+          } catch (Exception e) {
+            promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
+          }
+        }
+      });
+    } catch (Exception e) {
+      promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
+    }
+  }
+
+  /**
+   * Resolves with {@code {uri, width, height}}, a local JPEG or PNG preview of the document which
+   * fits in the requested bounds, or null if the document has no visual representation.
+   */
+  @ReactMethod
+  public void getThumbnail(String uriString, int width, int height, final Promise promise) {
+    if (width <= 0 || height <= 0 || width > MAX_THUMBNAIL_SIZE || height > MAX_THUMBNAIL_SIZE) {
+      promise.reject(E_THUMBNAIL_FAILED, "Thumbnail bounds must be between 1 and " + MAX_THUMBNAIL_SIZE);
+      return;
+    }
+
+    try {
+      ThumbnailCache.get(mContext).get(Uri.parse(uriString), width, height, pipeline, new ThumbnailCache.Callback() {
+        @Override
+        public void onThumbnail(@Nullable ThumbnailCache.Thumbnail thumbnail) {
+          if (thumbnail == null) {
+            promise.resolve(null);
+            return;
+          }
+          WritableMap map = Arguments.createMap();
+          map.putString(FIELD_URI, Uri.fromFile(thumbnail.file).toString());
+          map.putInt(FIELD_WIDTH, thumbnail.width);
+          map.putInt(FIELD_HEIGHT, thumbnail.height);
+          promise.resolve(map);
+        }
+
+        @Override
+        public void onError(Exception e) {
+          promise.reject(E_THUMBNAIL_FAILED, e.getLocalizedMessage(), e);
+        }
+      });
+    } catch (Exception e) {
+      promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
     }
   }
 
-  public void onShowActivityResult(int resultCode, Intent data, Promise promise) {
+  @ReactMethod
+  public void getCacheInfo(Promise promise) {
+    promise.resolve(DocumentCache.get(mContext).statsToMap());
+  }
+
+  @ReactMethod
+  public void configureCache(ReadableMap args, Promise promise) {
+    if (hasOption(args, OPTION_MAX_SIZE)) {
+      DocumentCache.get(mContext).setMaxBytes((long) args.getDouble(OPTION_MAX_SIZE));
+    }
+    if (hasOption(args, OPTION_MAX_AGE)) {
+      DocumentCache.get(mContext).setMaxAgeMs((long) args.getDouble(OPTION_MAX_AGE));
+    }
+    getCacheInfo(promise);
+  }
+
+  /**
+   * Deletes the cached copies of a document, by its content URI or the path returned for it.
+   * Resolves with the number of bytes freed.
+   */
+  @ReactMethod
+  public void release(final String uri, final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        promise.resolve((double) DocumentCache.get(mContext).release(uri));
+      }
+    });
+  }
+
+  /**
+   * Deletes every cached copy but keeps thumbnails and the cache settings. Resolves with the
+   * number of bytes freed.
+   */
+  @ReactMethod
+  public void releaseAll(final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        promise.resolve((double) DocumentCache.get(mContext).releaseAll());
+      }
+    });
+  }
+
+  @ReactMethod
+  public void clearCache(final Promise promise) {
+    runInBackground(promise, new Runnable() {
+      @Override
+      public void run() {
+        DocumentCache.get(mContext).clear();
+        ThumbnailCache.get(mContext).clear();
+        PathCache.SHARED.clear();
+        promise.resolve(null);
+      }
+    });
+  }
+
+  /**
+   * Reports how many provider calls (each one a binder round-trip) the module made, in total and
+   * for the last completed pick, along with counters and latency histograms of each stage.
+   */
+  @ReactMethod
+  public void getStats(Promise promise) {
+    WritableMap stats = Arguments.createMap();
+    stats.putMap(FIELD_IPC, IpcCounter.TOTAL.toMap());
+    stats.putMap(FIELD_LAST_PICK, lastPickIpc.toMap());
+    stats.putMap(FIELD_COUNTERS, Metrics.countersToMap());
+    stats.putMap(FIELD_STAGES, Metrics.stagesToMap());
+    stats.putMap(FIELD_RESOLVERS, PathResolvers.SHARED.statsToMap());
+    promise.resolve(stats);
+  }
+
+  /**
+   * Logs every resolution step to logcat at verbose level, off by default.
+   */
+  @ReactMethod
+  public void setTracingEnabled(boolean enabled) {
+    Metrics.setTracing(enabled);
+  }
+
+  private void sendEvent(String eventName, WritableMap params) {
+    ReactApplicationContext reactContext = getReactApplicationContext();
+    if (reactContext.hasActiveCatalystInstance()) {
+      reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+    }
+  }
+
+  public void onShowActivityResult(int resultCode, Intent data, final Promise promise, final PickOptions options) {
     if (resultCode == Activity.RESULT_CANCELED) {
       promise.reject(E_DOCUMENT_PICKER_CANCELED, "User canceled document picker");
     } else if (resultCode == Activity.RESULT_OK) {
@@ -173,210 +947,361 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
         clipData = data.getClipData();
       }
 
-      try {
-        WritableArray results = Arguments.createArray();
+      if (options.directory) {
+        resolveDirectory(uri, promise);
+        return;
+      }
 
-        if (uri != null) {
-          results.pushMap(getMetadata(uri));
-        } else if (clipData != null && clipData.getItemCount() > 0) {
-          final int length = clipData.getItemCount();
-          for (int i = 0; i < length; ++i) {
-            ClipData.Item item = clipData.getItemAt(i);
-            results.pushMap(getMetadata(item.getUri()));
-          }
-        } else {
-          promise.reject(E_INVALID_DATA_RETURNED, "Invalid data returned by intent");
-          return;
-        }
+      final List<Uri> uris = new ArrayList<>();
 
-        promise.resolve(results);
-      } catch (Exception e) {
-        promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
+      if (uri != null) {
+        uris.add(uri);
+      } else if (clipData != null && clipData.getItemCount() > 0) {
+        final int length = clipData.getItemCount();
+        for (int i = 0; i < length; ++i) {
+          ClipData.Item item = clipData.getItemAt(i);
+          uris.add(item.getUri());
+        }
+      } else {
+        promise.reject(E_INVALID_DATA_RETURNED, "Invalid data returned by intent");
+        return;
       }
+
+      Metrics.increment(Metrics.COUNTER_PICKS);
+
+      // resolving may query remote providers and copy whole files, keep it off the UI thread
+      runInBackground(promise, new Runnable() {
+        @Override
+        public void run() {
+          // one MediaStore query per collection instead of one per picked image
+          if (uris.size() > 1) {
+            options.prefetchedPaths = MediaPathBatch.resolve(mContext, uris, options.ipc);
+          }
+          resolveSelection(uris, promise, options);
+        }
+      });
     } else {
       promise.reject(E_UNKNOWN_ACTIVITY_RESULT, "Unknown activity result: " + resultCode);
     }
   }
 
-  private WritableMap getMetadata(Uri uri) {
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private void resolveDirectory(@Nullable Uri treeUri, Promise promise) {
+    if (treeUri == null) {
+      promise.reject(E_INVALID_DATA_RETURNED, "Invalid data returned by intent");
+      return;
+    }
+    try {
+      mContext.getContentResolver().takePersistableUriPermission(treeUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    } catch (SecurityException e) {
+      Log.w(NAME, "Provider did not grant a persistable permission for " + treeUri, e);
+    }
     WritableMap map = Arguments.createMap();
-  
-    map.putString(FIELD_URI, getPath(mContext, uri));
+    map.putString(FIELD_URI, treeUri.toString());
+    promise.resolve(map);
+  }
 
-    ContentResolver contentResolver = getReactApplicationContext().getContentResolver();
+  private void resolveSelection(List<Uri> uris, final Promise promise, final PickOptions options) {
+    try {
+      final int total = uris.size();
+      final CompactResults columns = options.compact
+          ? new CompactResults(total, options.hashAlgorithm != null, options.persistPermission)
+          : null;
+      pipeline.resolve(uris, options.concurrency, new ResolutionPipeline.Resolver() {
+        @Override
+        public WritableMap resolve(int index, Uri uri) {
+          if (options.filter.isExceedingCount(index)) {
+            // not even queried, the provider may be slow to answer for documents nobody wants
+            if (columns != null) {
+              columns.reject(index, uri.toString(), null, null, -1, PickFilter.REASON_MAX_COUNT);
+              return null;
+            }
+            return rejected(uri, null, PickFilter.REASON_MAX_COUNT);
+          }
+          ResolvedDocument document = resolveDocument(uri, options);
+          if (columns != null) {
+            document.writeTo(index, columns, options);
+            return null;
+          }
+          return getMetadata(document, options);
+        }
+      }, new ResolutionPipeline.Callback() {
+        @Override
+        public void onResolved(int index, WritableMap result) {
+          if (options.stream && result != null) {
+            WritableMap event = Arguments.createMap();
+            event.putInt(FIELD_STREAM_ID, options.streamId);
+            event.putInt(FIELD_INDEX, index);
+            event.putInt(FIELD_TOTAL, total);
+            event.putMap(FIELD_DOCUMENT, result);
+            sendEvent(EVENT_DOCUMENT, event);
+          }
+        }
 
-    map.putString(FIELD_TYPE, contentResolver.getType(uri));
+        @Override
+        public void onComplete(WritableMap[] metadata) {
+          lastPickIpc = options.ipc;
+          // copies handed out before the previous pick are no longer kept over the budget
+          DocumentCache.get(mContext).unpinOlder();
 
-    Cursor cursor = contentResolver.query(uri, null, null, null, null, null);
+          if (columns != null) {
+            sendBatches(columns, promise, options);
+            return;
+          }
 
-    try {
-      if (cursor != null && cursor.moveToFirst()) {
-        int displayNameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-        if (!cursor.isNull(displayNameIndex)) {
-          map.putString(FIELD_NAME, cursor.getString(displayNameIndex));
-        }
+          if (options.stream) {
+            // every document already went out with its own event, only report totals
+            WritableMap event = Arguments.createMap();
+            event.putInt(FIELD_STREAM_ID, options.streamId);
+            event.putInt(FIELD_TOTAL, total);
+            event.putMap(FIELD_IPC, options.ipc.toMap());
+            sendEvent(EVENT_COMPLETE, event);
+
+            WritableMap summary = Arguments.createMap();
+            summary.putInt(FIELD_TOTAL, total);
+            promise.resolve(summary);
+            return;
+          }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-          int mimeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE);
-          if (!cursor.isNull(mimeIndex)) {
-            map.putString(FIELD_TYPE, cursor.getString(mimeIndex));
+          long start = Metrics.start();
+          WritableArray results = Arguments.createArray();
+          for (WritableMap map : metadata) {
+            results.pushMap(map);
           }
+          Metrics.record(Metrics.STAGE_SERIALIZE, start);
+          promise.resolve(results);
         }
 
-        int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
-        if (!cursor.isNull(sizeIndex)) {
-          map.putInt(FIELD_SIZE, cursor.getInt(sizeIndex));
+        @Override
+        public void onError(Exception e) {
+          promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
         }
+      });
+    } catch (Exception e) {
+      promise.reject(E_UNEXPECTED_EXCEPTION, e.getLocalizedMessage(), e);
+    }
+  }
+
+  /**
+   * Emits the columns of a compact pick in bounded batch events, on the worker thread which
+   * completed the selection, then resolves with {@code {total, batches}}.
+   */
+  private void sendBatches(final CompactResults columns, Promise promise, final PickOptions options) {
+    long start = Metrics.start();
+    int batches = columns.emitBatches(options.batchSize, new CompactResults.BatchListener() {
+      @Override
+      public void onBatch(WritableMap batch) {
+        batch.putInt(FIELD_STREAM_ID, options.streamId);
+        batch.putInt(FIELD_TOTAL, columns.size());
+        sendEvent(EVENT_BATCH, batch);
       }
-    } finally {
-      if (cursor != null) {
-        cursor.close();
+    });
+    Metrics.record(Metrics.STAGE_SERIALIZE, start);
+
+    WritableMap summary = Arguments.createMap();
+    summary.putInt(FIELD_TOTAL, columns.size());
+    summary.putInt(FIELD_BATCHES, batches);
+    summary.putMap(FIELD_IPC, options.ipc.toMap());
+    promise.resolve(summary);
+  }
+
+  /**
+   * A picked document once it was queried, filtered, given a path and hashed, before it is written
+   * into a result map or the compact columns.
+   */
+  private static class ResolvedDocument {
+    final Uri uri;
+    final DocumentRow row;
+    @Nullable
+    String path;
+    // set when the pick filter left the document out
+    @Nullable
+    String reason;
+    @Nullable
+    String hash;
+
+    ResolvedDocument(Uri uri, DocumentRow row) {
+      this.uri = uri;
+      this.row = row;
+    }
+
+    // extended metadata is not part of the compact format
+    void writeTo(int index, CompactResults columns, PickOptions options) {
+      if (reason != null) {
+        columns.reject(index, uri.toString(), row.displayName, row.mimeType, row.size, reason);
+      } else {
+        columns.set(index, path, row.displayName, row.mimeType, row.size, hash,
+            options.persistPermission ? uri.toString() : null);
       }
     }
+  }
 
-    return map;
+  private ResolvedDocument resolveDocument(Uri uri, PickOptions options) {
+    long start = Metrics.start();
+    DocumentRow row = DocumentRow.query(mContext, uri, options.ipc);
+    Metrics.record(Metrics.STAGE_QUERY, start);
+    Metrics.increment(Metrics.COUNTER_DOCUMENTS);
+
+    ResolvedDocument document = new ResolvedDocument(uri, row);
+    document.reason = options.filter.reject(row);
+    if (document.reason != null) {
+      return document;
+    }
+
+    document.path = getPath(mContext, uri, row, options);
+    if (options.oversized.remove(uri.toString())) {
+      document.reason = PickFilter.REASON_TOO_LARGE;
+      return document;
+    }
+    if (options.hashAlgorithm != null) {
+      document.hash = hashDocument(uri, document.path, options);
+    }
+    if (options.persistPermission) {
+      persistPermission(uri, row);
+    }
+    return document;
   }
 
-    public static String getPath(final Context context, final Uri uri) {
-        String absolutePath = getLocalPath(context, uri);
-        return absolutePath != null ? absolutePath : uri.toString();
-    }
-
-    @TargetApi(Build.VERSION_CODES.KITKAT)
-    private static String getLocalPath(final Context context, final Uri uri) {
-
-            Log.d("TAG" + " File -",
-                    "Authority: " + uri.getAuthority() +
-                            ", Fragment: " + uri.getFragment() +
-                            ", Port: " + uri.getPort() +
-                            ", Query: " + uri.getQuery() +
-                            ", Scheme: " + uri.getScheme() +
-                            ", Host: " + uri.getHost() +
-                            ", Segments: " + uri.getPathSegments().toString()
-            );
-
-        final boolean isKitKat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
-
-        // DocumentProvider
-        if (isKitKat && DocumentsContract.isDocumentUri(context, uri)) {
-            // LocalStorageProvider
-            if (isLocalStorageDocument(uri)) {
-                // The path is the id
-                return DocumentsContract.getDocumentId(uri);
-            }
-            // ExternalStorageProvider
-            else if (isExternalStorageDocument(uri)) {
-                final String docId = DocumentsContract.getDocumentId(uri);
-                final String[] split = docId.split(":");
-                final String type = split[0];
-
-                if ("primary".equalsIgnoreCase(type)) {
-                    return Environment.getExternalStorageDirectory() + "/" + split[1];
-                } else if ("home".equalsIgnoreCase(type)) {
-                    return Environment.getExternalStorageDirectory() + "/documents/" + split[1];
-                }
-            }
-            // DownloadsProvider
-            else if (isDownloadsDocument(uri)) {
+  private static WritableMap getMetadata(ResolvedDocument document, PickOptions options) {
+    Uri uri = document.uri;
+    DocumentRow row = document.row;
+    if (document.reason != null) {
+      return rejected(uri, row, document.reason);
+    }
 
-                final String id = DocumentsContract.getDocumentId(uri);
+    WritableMap map = Arguments.createMap();
+    map.putString(FIELD_URI, document.path);
+    map.putString(FIELD_TYPE, row.mimeType);
 
-                if (id != null && id.startsWith("raw:")) {
-                    return id.substring(4);
-                }
+    if (row.displayName != null) {
+      map.putString(FIELD_NAME, row.displayName);
+    }
 
-                String[] contentUriPrefixesToTry = new String[]{
-                        "content://downloads/public_downloads",
-                        "content://downloads/my_downloads"
-                };
-
-                for (String contentUriPrefix : contentUriPrefixesToTry) {
-                    Uri contentUri = ContentUris.withAppendedId(Uri.parse(contentUriPrefix), Long.valueOf(id));
-                    try {
-                        String path = getDataColumn(context, contentUri, null, null);
-                        if (path != null) {
-                            return path;
-                        }
-                    } catch (Exception e) {}
-                }
+    // doubles hold every integer up to 2^53, so sizes above 2 GB survive the bridge
+    if (row.size >= 0) {
+      map.putDouble(FIELD_SIZE, row.size);
+    }
 
-                // path could not be retrieved using ContentResolver, therefore copy file to accessible cache using streams
-                String fileName = getFileName(context, uri);
-                File cacheDir = getDocumentCacheDir(context);
-                File file = generateFileName(fileName, cacheDir);
-                String destinationPath = null;
-                if (file != null) {
-                    destinationPath = file.getAbsolutePath();
-                    saveFileFromUri(context, uri, destinationPath);
-                }
+    if (document.hash != null) {
+      map.putString(FIELD_HASH, document.hash);
+    }
 
-                return destinationPath;
-            }
-            // MediaProvider
-            else if (isMediaDocument(uri)) {
-                final String docId = DocumentsContract.getDocumentId(uri);
-                final String[] split = docId.split(":");
-                final String type = split[0];
-
-                Uri contentUri = null;
-                if ("image".equals(type)) {
-                    contentUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
-                } else if ("video".equals(type)) {
-                    contentUri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
-                } else if ("audio".equals(type)) {
-                    contentUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-                }
+    if (options.persistPermission) {
+      map.putString(FIELD_CONTENT_URI, uri.toString());
+    }
 
-                final String selection = "_id=?";
-                final String[] selectionArgs = new String[]{
-                        split[1]
-                };
+    if (options.extendedMetadata) {
+      if (row.lastModified >= 0) {
+        map.putDouble(FIELD_LAST_MODIFIED, row.lastModified);
+      }
+      if (row.documentId != null) {
+        map.putString(FIELD_DOCUMENT_ID, row.documentId);
+      }
+      map.putInt(FIELD_FLAGS, row.flags);
+      map.putBoolean(FIELD_IS_VIRTUAL, row.isVirtual());
+      map.putBoolean(FIELD_SUPPORTS_THUMBNAIL, row.supportsThumbnail());
+    }
 
-                return getDataColumn(context, contentUri, selection, selectionArgs);
-            }
-        }
-        // MediaStore (and general)
-        else if ("content".equalsIgnoreCase(uri.getScheme())) {
+    return map;
+  }
 
-            // Return the remote address
-            if (isGooglePhotosUri(uri)) {
-                return uri.getLastPathSegment();
-            }
+  /**
+   * Lightweight result of a document left out by the pick filter, it is neither copied nor hashed
+   * and its uri stays the one returned by the picker.
+   */
+  private static WritableMap rejected(Uri uri, @Nullable DocumentRow row, String reason) {
+    WritableMap map = Arguments.createMap();
+    map.putString(FIELD_URI, uri.toString());
+    if (row != null) {
+      map.putString(FIELD_TYPE, row.mimeType);
+      if (row.displayName != null) {
+        map.putString(FIELD_NAME, row.displayName);
+      }
+      if (row.size >= 0) {
+        map.putDouble(FIELD_SIZE, row.size);
+      }
+    }
+    map.putBoolean(FIELD_REJECTED, true);
+    map.putString(FIELD_REASON, reason);
+    return map;
+  }
 
-            return getDataColumn(context, uri, null, null);
-        }
-        // File
-        else if ("file".equalsIgnoreCase(uri.getScheme())) {
-            return uri.getPath();
-        }
+  /**
+   * Hashes a picked document on the calling worker thread. Copies were already digested while
+   * copying, local files are read directly and everything else is streamed from its provider.
+   */
+  @Nullable
+  private String hashDocument(Uri uri, String path, PickOptions options) {
+    String hash = options.copyHashes.remove(uri.toString());
+    if (hash != null) {
+      return hash;
+    }
 
-        return null;
+    try {
+      File file = new File(path);
+      if (path.startsWith("/") && file.isFile()) {
+        try {
+          return ContentDigest.hexOf(file, options.hashAlgorithm, FileCopier.buffer());
+        } catch (IOException e) {
+          // scoped storage lets a _data path resolve without letting the app read it
+          Log.v(NAME, "Unable to read " + path + ", hashing through the provider", e);
+        }
+      }
+      return ContentDigest.hexOf(mContext, uri, options.hashAlgorithm, FileCopier.buffer());
+    } catch (IOException | SecurityException e) {
+      Log.w(NAME, "Unable to hash " + uri, e);
+      return null;
     }
+  }
 
-    public static String getFileName(@NonNull Context context, Uri uri) {
-        String mimeType = context.getContentResolver().getType(uri);
-        String filename = null;
+    public static String getPath(final Context context, final Uri uri) {
+        return getPath(context, uri, null, new PickOptions());
+    }
 
-        if (mimeType == null && context != null) {
-            String path = getPath(context, uri);
-            if (path == null) {
-                filename = getName(uri.toString());
-            } else {
-                File file = new File(path);
-                filename = file.getName();
+    /**
+     * @param row metadata already queried for this uri, lets the path logic skip its own queries.
+     */
+    static String getPath(final Context context, final Uri uri, @Nullable final DocumentRow row, final PickOptions options) {
+        long start = Metrics.start();
+        String key = uri.toString();
+        long lastModified = row != null ? row.lastModified : -1;
+
+        String absolutePath = PathCache.SHARED.get(key, lastModified);
+        if (absolutePath != null) {
+            Metrics.increment(Metrics.COUNTER_PATH_CACHE_HITS);
+            if (row != null && options.filter.limitsCopyOf(row)
+                    && new File(absolutePath).length() > options.filter.maxSize) {
+                // the path may be a copy made earlier without a limit, cacheDocument never saw it
+                options.oversized.add(key);
             }
         } else {
-            Cursor returnCursor = context.getContentResolver().query(uri, null,
-                    null, null, null);
-            if (returnCursor != null) {
-                int nameIndex = returnCursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                returnCursor.moveToFirst();
-                filename = returnCursor.getString(nameIndex);
-                returnCursor.close();
+            absolutePath = getLocalPath(context, uri, row, options);
+            if (absolutePath != null) {
+                String cacheDir = new File(context.getCacheDir(), DOCUMENTS_DIR).getPath() + "/";
+                PathCache.SHARED.put(key, lastModified, absolutePath, absolutePath.startsWith(cacheDir));
             }
         }
+        Metrics.record(Metrics.STAGE_PATH, start);
+        return absolutePath != null ? absolutePath : key;
+    }
+
+    private static String getLocalPath(final Context context, final Uri uri, @Nullable final DocumentRow row,
+                                       final PickOptions options) {
+
+        if (Metrics.isTracing()) {
+            Metrics.trace("Resolving path of " + uri + ", authority: " + uri.getAuthority());
+        }
 
-        return filename;
+        return PathResolvers.SHARED.resolve(new PathResolver.Request(context, uri, row, options));
+    }
+
+    public static String getFileName(@NonNull Context context, Uri uri) {
+        DocumentRow row = DocumentRow.query(context, uri, new IpcCounter());
+        if (row.displayName != null) {
+            return row.displayName;
+        }
+        // getPath falls back to the uri itself, either way the last segment is the best guess
+        return getName(getPath(context, uri, row, new PickOptions()));
     }
 
     public static File getDocumentCacheDir(@NonNull Context context) {
@@ -384,9 +1309,6 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
         if (!dir.exists()) {
             dir.mkdirs();
         }
-        logDir(context.getCacheDir());
-        logDir(dir);
-
         return dir;
     }
 
@@ -425,42 +1347,76 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
             return null;
         }
 
-        logDir(directory);
-
         return file;
     }
 
-    private static void saveFileFromUri(Context context, Uri uri, String destinationPath) {
-        InputStream is = null;
-        BufferedOutputStream bos = null;
+    static String cacheDocument(Context context, final Uri uri, DocumentRow row, PickOptions options) {
+        return cacheDocument(context, DocumentCache.get(context), uri, row, options);
+    }
+
+    static String cacheDocument(Context context, DocumentCache cache, final Uri uri, DocumentRow row,
+                                PickOptions options) {
+        CopyJobs.Job job = options.copyJobs != null ? options.copyJobs.start(uri) : null;
+        FileCopier.ProgressListener listener = job;
+        if (options.filter.limitsCopyOf(row)) {
+            // the provider did not report a size, stop the copy as soon as it grows past the limit
+            final FileCopier.ProgressListener delegate = job;
+            final long maxSize = options.filter.maxSize;
+            listener = new FileCopier.ProgressListener() {
+                @Override
+                public void onProgress(long bytesCopied, long totalBytes) throws IOException {
+                    if (bytesCopied > maxSize) {
+                        throw new PickFilter.SizeLimitExceededException(uri + " is larger than " + maxSize + " bytes");
+                    }
+                    if (delegate != null) {
+                        delegate.onProgress(bytesCopied, totalBytes);
+                    }
+                }
+            };
+        }
         try {
-            is = context.getContentResolver().openInputStream(uri);
-            bos = new BufferedOutputStream(new FileOutputStream(destinationPath, false));
-            byte[] buf = new byte[1024];
-            is.read(buf);
-            do {
-                bos.write(buf);
-            } while (is.read(buf) != -1);
+            // only reported in the stats, a copy racing with this check is harmless
+            boolean cached = cache.contains(uri, row.lastModified, row.size);
+            DocumentCache.Entry entry = cache.getOrCopy(context, uri, row.displayName,
+                    row.lastModified, row.size, options.verifyCopy, options.hashAlgorithm, listener);
+            if (options.filter.limitsCopyOf(row) && entry.file.length() > options.filter.maxSize) {
+                // copied earlier without a limit
+                options.oversized.add(uri.toString());
+                return null;
+            }
+            if (cached) {
+                options.cachedCopies.add(uri.toString());
+            }
+            if (options.hashAlgorithm != null) {
+                String hash = entry.hashes.get(options.hashAlgorithm);
+                if (hash != null) {
+                    options.copyHashes.put(uri.toString(), hash);
+                }
+            }
+            return entry.file.getAbsolutePath();
         } catch (IOException e) {
-            e.printStackTrace();
+            if (job != null && job.isCancelled()) {
+                options.copyCancelled = true;
+                if (job.isDiscarded()) {
+                    cache.discardPendingCopy(uri, row.lastModified, row.size);
+                }
+            } else if (e instanceof PickFilter.SizeLimitExceededException) {
+                options.oversized.add(uri.toString());
+            } else {
+                Log.w(NAME, "Failed to copy " + uri, e);
+            }
+            return null;
+        } catch (RuntimeException e) {
+            // providers throw SecurityException once a grant is gone, and anything else across the binder
+            Log.w(NAME, "Failed to copy " + uri, e);
+            return null;
         } finally {
-            try {
-                if (is != null) is.close();
-                if (bos != null) bos.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (job != null) {
+                options.copyJobs.finish(job);
             }
         }
     }
 
-    private static void logDir(File dir) {
-        Log.d("TAG", "Dir=" + dir);
-        File[] files = dir.listFiles();
-        for (File file : files) {
-            Log.d("TAG", "File=" + file.getPath());
-        }
-    }
-
     public static String getName(String filename) {
         if (filename == null) {
             return null;
@@ -471,9 +1427,8 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
 
 
 
-    private static String uriToPath(Uri uri) {
+    static String uriToPath(Uri uri) {
         List<String> list =  uri.getPathSegments();
-        Log.d("list", list.toString());
       String slash = "/";
       StringBuilder sb = new StringBuilder();
       int i = 1;
@@ -492,10 +1447,15 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
     }
 
     public static String getDataColumn(Context context, Uri uri, String selection, String[] selectionArgs) {
+        return getDataColumn(context, uri, selection, selectionArgs, IpcCounter.TOTAL);
+    }
+
+    static String getDataColumn(Context context, Uri uri, String selection, String[] selectionArgs, IpcCounter ipc) {
         Cursor cursor = null;
         final String column =  MediaStore.Files.FileColumns.DATA;
         String[] projection = { column };
         try {
+            ipc.countQuery();
             cursor = context.getContentResolver().query(uri, projection, selection, selectionArgs, null);
             if (cursor != null && cursor.moveToFirst()) {
                 int index = cursor.getColumnIndexOrThrow(column);
@@ -512,7 +1472,7 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
     }
 
     public static boolean isLocalStorageDocument(Uri uri) {
-        return AUTHORITY.equals(uri.getAuthority());
+        return PathResolvers.SHARED.getLocalStorageAuthority().equals(uri.getAuthority());
     }
 
     /**
@@ -521,7 +1481,7 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
      * @return Whether the Uri authority is ExternalStorageProvider.
      */
     public static boolean isExternalStorageDocument(Uri uri) {
-        return "com.android.externalstorage.documents".equals(uri.getAuthority());
+        return PathResolvers.EXTERNAL_STORAGE_AUTHORITY.equals(uri.getAuthority());
     }
 
     /**
@@ -530,7 +1490,7 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
      * @return Whether the Uri authority is DownloadsProvider.
      */
     public static boolean isDownloadsDocument(Uri uri) {
-        return "com.android.providers.downloads.documents".equals(uri.getAuthority());
+        return PathResolvers.DOWNLOADS_AUTHORITY.equals(uri.getAuthority());
     }
 
     /**
@@ -539,7 +1499,7 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
      * @return Whether the Uri authority is MediaProvider.
      */
     public static boolean isMediaDocument(Uri uri) {
-        return "com.android.providers.media.documents".equals(uri.getAuthority());
+        return PathResolvers.MEDIA_AUTHORITY.equals(uri.getAuthority());
     }
 
     /**
@@ -548,6 +1508,6 @@ public class DocumentPickerModule extends ReactContextBaseJavaModule {
      * @return Whether the Uri authority is Google Photos.
      */
     public static boolean isGooglePhotosUri(Uri uri) {
-        return "com.google.android.apps.photos.content".equals(uri.getAuthority());
+        return PathResolvers.GOOGLE_PHOTOS_AUTHORITY.equals(uri.getAuthority());
     }
 }
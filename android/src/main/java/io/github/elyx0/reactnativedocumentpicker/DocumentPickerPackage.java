@@ -12,6 +12,26 @@ import java.util.List;
 
 public class DocumentPickerPackage implements ReactPackage {
 
+	public DocumentPickerPackage() {
+	}
+
+	/**
+	 * @param localStorageAuthority authority of the app's own documents provider whose document ids
+	 *                              are absolute paths, so they resolve without a query or a copy.
+	 */
+	public DocumentPickerPackage(String localStorageAuthority) {
+		PathResolvers.SHARED.setLocalStorageAuthority(localStorageAuthority);
+	}
+
+	/**
+	 * Resolves the documents of {@code authority} with {@code resolver} before the built-in
+	 * resolvers, which still handle the documents it returns null for.
+	 */
+	public DocumentPickerPackage addPathResolver(String authority, PathResolver resolver) {
+		PathResolvers.SHARED.register(authority, resolver);
+		return this;
+	}
+
 	// Deprecated RN 0.47
 	public List<Class<? extends JavaScriptModule>> createJSModules() {
 		return Collections.emptyList();
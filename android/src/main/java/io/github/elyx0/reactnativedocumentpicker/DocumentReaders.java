@@ -0,0 +1,135 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Open documents read in chunks straight from the provider, without copying them to the cache.
+ *
+ * Providers backed by a regular file are read with positional {@link FileChannel} reads so any
+ * range can be requested in any order. Pipes only support reading forward from the current
+ * position.
+ */
+class DocumentReaders {
+  private static final String TAG = "RNDocumentPicker";
+  static final int MAX_READ_LENGTH = 4 * 1024 * 1024;
+
+  static class Reader {
+    final int handle;
+    final long size;
+    final boolean seekable;
+    private final ParcelFileDescriptor descriptor;
+    private final FileInputStream stream;
+    private final FileChannel channel;
+    private long position;
+
+    private Reader(int handle, ParcelFileDescriptor descriptor) {
+      this.handle = handle;
+      this.descriptor = descriptor;
+      this.stream = new FileInputStream(descriptor.getFileDescriptor());
+      this.channel = stream.getChannel();
+      this.size = descriptor.getStatSize();
+      this.seekable = size >= 0;
+    }
+
+    /**
+     * @return the bytes read encoded as base64, an empty string at end of file.
+     */
+    synchronized String read(long offset, int length) throws IOException {
+      if (offset < 0 || length < 0) {
+        throw new IOException("Invalid range " + offset + "+" + length);
+      }
+      if (!seekable && offset != position) {
+        throw new IOException("Document is a stream, expected a read at offset " + position);
+      }
+
+      int capacity = Math.min(length, MAX_READ_LENGTH);
+      if (seekable) {
+        capacity = (int) Math.max(0, Math.min(capacity, size - offset));
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate(capacity);
+      while (buffer.hasRemaining()) {
+        int read = seekable
+            ? channel.read(buffer, offset + buffer.position())
+            : channel.read(buffer);
+        if (read < 0) {
+          break;
+        }
+      }
+
+      int count = buffer.position();
+      position = offset + count;
+      return Base64.encodeToString(buffer.array(), 0, count, Base64.NO_WRAP);
+    }
+
+    private void close() {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Unable to close the stream of read handle " + handle, e);
+      }
+      try {
+        descriptor.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Unable to close the descriptor of read handle " + handle, e);
+      }
+    }
+  }
+
+  private final AtomicInteger nextHandle = new AtomicInteger(1);
+  private final ConcurrentHashMap<Integer, Reader> readers = new ConcurrentHashMap<>();
+
+  Reader open(Context context, Uri uri) throws IOException {
+    ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+    if (descriptor == null) {
+      throw new FileNotFoundException("Unable to open " + uri);
+    }
+
+    Reader reader = new Reader(nextHandle.getAndIncrement(), descriptor);
+    readers.put(reader.handle, reader);
+    return reader;
+  }
+
+  Reader get(int handle) throws IOException {
+    Reader reader = readers.get(handle);
+    if (reader == null) {
+      throw new IOException("Invalid document handle " + handle);
+    }
+    return reader;
+  }
+
+  /**
+   * @return whether the handle was open.
+   */
+  boolean close(int handle) {
+    Reader reader = readers.remove(handle);
+    if (reader == null) {
+      return false;
+    }
+    synchronized (reader) {
+      reader.close();
+    }
+    return true;
+  }
+
+  void closeAll() {
+    List<Integer> handles = new ArrayList<>(readers.keySet());
+    for (Integer handle : handles) {
+      close(handle);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * The metadata of a single document, read with one projected query and shared between the name,
+ * type, size and path logic so each of them does not go back to the provider.
+ */
+class DocumentRow {
+  private static final String COLUMN_DATA = MediaStore.Files.FileColumns.DATA;
+
+  // DocumentsProvider answers any projection, unknown columns are returned as null
+  private static final String[] DOCUMENT_PROJECTION = {
+      OpenableColumns.DISPLAY_NAME,
+      OpenableColumns.SIZE,
+      DocumentsContract.Document.COLUMN_MIME_TYPE,
+      DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+      DocumentsContract.Document.COLUMN_FLAGS,
+      DocumentsContract.Document.COLUMN_DOCUMENT_ID
+  };
+
+  // plain content providers such as MediaStore, which name their MIME type column the same way
+  private static final String[] CONTENT_PROJECTION = {
+      OpenableColumns.DISPLAY_NAME,
+      OpenableColumns.SIZE,
+      DocumentsContract.Document.COLUMN_MIME_TYPE,
+      COLUMN_DATA
+  };
+
+  // the only columns every provider has to support, see OpenableColumns
+  private static final String[] OPENABLE_PROJECTION = {
+      OpenableColumns.DISPLAY_NAME,
+      OpenableColumns.SIZE
+  };
+
+  @Nullable
+  String displayName;
+  @Nullable
+  String mimeType;
+  long size = -1;
+  long lastModified = -1;
+  int flags;
+  @Nullable
+  String documentId;
+  @Nullable
+  String dataPath;
+  /**
+   * Whether the provider answered the {@code _data} column, when it did a null {@link #dataPath}
+   * means there is no path and asking again is pointless.
+   */
+  boolean hasDataColumn;
+  /**
+   * Whether the provider answered the query without a row, unlike a failed query this means the
+   * document does not exist.
+   */
+  boolean missing;
+
+  boolean isVirtual() {
+    return (flags & DocumentsContract.Document.FLAG_VIRTUAL_DOCUMENT) != 0;
+  }
+
+  boolean supportsThumbnail() {
+    return (flags & DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL) != 0;
+  }
+
+  static DocumentRow query(Context context, Uri uri, IpcCounter ipc) {
+    DocumentRow row = new DocumentRow();
+
+    if (ContentResolver.SCHEME_FILE.equalsIgnoreCase(uri.getScheme())) {
+      File file = new File(uri.getPath());
+      row.displayName = file.getName();
+      row.size = file.length();
+      row.lastModified = file.lastModified();
+      row.dataPath = file.getAbsolutePath();
+      row.hasDataColumn = true;
+      return row;
+    }
+
+    ContentResolver contentResolver = context.getContentResolver();
+    Cursor cursor = null;
+    try {
+      String[] projection = OPENABLE_PROJECTION;
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+        projection = DocumentsContract.isDocumentUri(context, uri) ? DOCUMENT_PROJECTION : CONTENT_PROJECTION;
+      }
+      try {
+        ipc.countQuery();
+        cursor = contentResolver.query(uri, projection, null, null, null);
+      } catch (RuntimeException e) {
+        // SQLite backed providers reject columns they do not know about
+        ipc.countQuery();
+        cursor = contentResolver.query(uri, OPENABLE_PROJECTION, null, null, null);
+      }
+
+      if (cursor != null) {
+        if (cursor.moveToFirst()) {
+          row.read(cursor);
+        } else {
+          row.missing = true;
+        }
+      }
+    } catch (Exception e) {
+      // providers may throw anything across the binder, the metadata is best effort
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+
+    if (row.mimeType == null) {
+      ipc.countGetType();
+      row.mimeType = contentResolver.getType(uri);
+    }
+
+    return row;
+  }
+
+  private void read(Cursor cursor) {
+    int index = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+    if (index != -1 && !cursor.isNull(index)) {
+      displayName = cursor.getString(index);
+    }
+
+    index = cursor.getColumnIndex(OpenableColumns.SIZE);
+    if (index != -1 && !cursor.isNull(index)) {
+      size = cursor.getLong(index);
+    }
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      index = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_MIME_TYPE);
+      if (index != -1 && !cursor.isNull(index)) {
+        mimeType = cursor.getString(index);
+      }
+
+      index = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+      if (index != -1 && !cursor.isNull(index)) {
+        lastModified = cursor.getLong(index);
+      }
+
+      index = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_FLAGS);
+      if (index != -1 && !cursor.isNull(index)) {
+        flags = cursor.getInt(index);
+      }
+
+      index = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_DOCUMENT_ID);
+      if (index != -1 && !cursor.isNull(index)) {
+        documentId = cursor.getString(index);
+      }
+    }
+
+    index = cursor.getColumnIndex(COLUMN_DATA);
+    if (index != -1) {
+      hasDataColumn = true;
+      if (!cursor.isNull(index)) {
+        dataPath = cursor.getString(index);
+      }
+    }
+  }
+}
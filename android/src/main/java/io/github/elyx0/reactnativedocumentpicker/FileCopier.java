@@ -0,0 +1,322 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies the contents of a document into a local file.
+ *
+ * When the provider hands out a regular file descriptor the copy is done with
+ * {@link FileChannel#transferTo} so the kernel moves the bytes without going through the Java
+ * heap. Pipes and sockets (e.g. documents streamed from a cloud provider) can not be mapped and
+ * fall back to a loop over a reusable direct {@link ByteBuffer}. Copies that digest the contents
+ * take the same loop, so each byte is read from the provider once.
+ *
+ * A copy can resume from the bytes already in the destination when the source is a regular file,
+ * which allows positional reads. Streamed sources start over from the first byte.
+ */
+class FileCopier {
+  private static final String TAG = "RNDocumentPicker";
+  private static final int BUFFER_SIZE = 256 * 1024;
+  // transferTo may stop short of the requested count, and smaller slices keep it interruptible
+  private static final long TRANSFER_SLICE = 8 * 1024 * 1024;
+  // bytes written between two checkpoints, each one costs an fsync of the destination
+  static final long CHECKPOINT_BYTES = 8 * 1024 * 1024;
+
+  private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  };
+
+  interface ProgressListener {
+    /**
+     * @param totalBytes expected size of the copy, or -1 when the provider does not report it.
+     * @throws IOException to abort the copy, the partial destination is deleted.
+     */
+    void onProgress(long bytesCopied, long totalBytes) throws IOException;
+  }
+
+  interface Checkpoint {
+    /**
+     * Called every {@link #CHECKPOINT_BYTES} once the destination is flushed to disk, so a copy
+     * killed after this call can resume from {@code bytesCommitted}.
+     */
+    void onCommitted(long bytesCommitted) throws IOException;
+  }
+
+  static class Result {
+    // length of the destination, including the bytes of a resumed copy
+    final long bytesCopied;
+    // bytes which were already in the destination, 0 unless the copy was resumed
+    final long resumedFrom;
+    @Nullable
+    final String checksum;
+    @Nullable
+    final String hash;
+
+    Result(long bytesCopied, long resumedFrom, String checksum, String hash) {
+      this.bytesCopied = bytesCopied;
+      this.resumedFrom = resumedFrom;
+      this.checksum = checksum;
+      this.hash = hash;
+    }
+  }
+
+  /**
+   * The buffer of the calling thread, for other reads which should not allocate their own.
+   */
+  static ByteBuffer buffer() {
+    return BUFFER.get();
+  }
+
+  /**
+   * @param verify        when true the source is digested while copying and compared to a digest of
+   *                      the written file, a mismatch deletes the destination and throws.
+   * @param hashAlgorithm one of the {@link ContentDigest} algorithms to digest the source with while
+   *                      copying, or null.
+   */
+  static Result copy(Context context, Uri uri, File destination, boolean verify, @Nullable String hashAlgorithm,
+                     @Nullable ProgressListener listener) throws IOException {
+    return copy(context, uri, destination, 0, verify, hashAlgorithm, listener, null);
+  }
+
+  /**
+   * @param resumeFrom number of bytes of the destination known to match the source, the copy goes
+   *                   on from there if the source can seek and starts over otherwise.
+   * @param checkpoint notified as the copy is committed to disk, or null. Unlike other copies a
+   *                   checkpointed one keeps its destination when it fails, so it can be resumed.
+   */
+  static Result copy(Context context, Uri uri, File destination, long resumeFrom, boolean verify,
+                     @Nullable String hashAlgorithm, @Nullable ProgressListener listener,
+                     @Nullable Checkpoint checkpoint) throws IOException {
+    AssetFileDescriptor afd = context.getContentResolver().openAssetFileDescriptor(uri, "r");
+    if (afd == null) {
+      throw new FileNotFoundException("Unable to open " + uri);
+    }
+
+    FileInputStream in = null;
+    RandomAccessFile out = null;
+    ContentDigest digest = verify ? ContentDigest.create(ContentDigest.SHA256) : null;
+    // a sha256 hash is the verification digest, there is no need to compute it twice
+    boolean hashIsChecksum = verify && ContentDigest.SHA256.equals(hashAlgorithm);
+    ContentDigest hash = hashAlgorithm != null && !hashIsChecksum ? ContentDigest.create(hashAlgorithm) : null;
+    long offset = 0;
+    long copied;
+    boolean success = false;
+    try {
+      // use the raw descriptor and explicit offsets, the stream wrappers of AssetFileDescriptor
+      // only bound reads made through the stream, not through its channel
+      in = new FileInputStream(afd.getFileDescriptor());
+      out = new RandomAccessFile(destination, "rw");
+      FileChannel source = in.getChannel();
+      FileChannel target = out.getChannel();
+
+      long start = afd.getStartOffset();
+      long length = afd.getLength();
+      long statSize = afd.getParcelFileDescriptor().getStatSize();
+      boolean regularFile = statSize >= 0;
+      if (length == AssetFileDescriptor.UNKNOWN_LENGTH && regularFile) {
+        length = statSize - start;
+      }
+
+      // a pipe can not skip what was copied before, neither can a source which shrank
+      if (regularFile && resumeFrom > 0 && resumeFrom <= length && resumeFrom <= target.size()) {
+        offset = resumeFrom;
+        if (digest != null || hash != null) {
+          digestPrefix(target, offset, digest, hash);
+        }
+      }
+      target.truncate(offset);
+      target.position(offset);
+
+      ProgressListener progress = listener;
+      if (offset > 0 || checkpoint != null) {
+        progress = new Committer(target, offset, listener, checkpoint);
+      }
+      long remaining = length >= 0 ? length - offset : length;
+      if (regularFile && digest == null && hash == null) {
+        copied = transfer(source, target, start + offset, remaining, progress);
+      } else {
+        if (regularFile) {
+          source.position(start + offset);
+        }
+        copied = bufferedCopy(source, target, remaining, digest, hash, progress);
+      }
+      copied += offset;
+
+      if (length >= 0 && copied != length) {
+        throw new IOException("Expected " + length + " bytes from " + uri + " but copied " + copied);
+      }
+      success = true;
+    } finally {
+      closeQuietly(in);
+      closeQuietly(out);
+      // AssetFileDescriptor only implements Closeable from API 19
+      try {
+        afd.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Unable to close the descriptor of " + uri, e);
+      }
+      if (!success && checkpoint == null) {
+        destination.delete();
+      }
+    }
+
+    String checksum = null;
+    if (digest != null) {
+      checksum = digest.hex();
+      String written = ContentDigest.hexOf(destination, ContentDigest.SHA256, BUFFER.get());
+      if (!checksum.equals(written)) {
+        destination.delete();
+        throw new IOException("Checksum mismatch while copying " + uri);
+      }
+    }
+
+    return new Result(copied, offset, checksum, hashIsChecksum ? checksum : hash != null ? hash.hex() : null);
+  }
+
+  /**
+   * Feeds the bytes a resumed copy keeps to the digests, reading them back from the destination
+   * is much cheaper than reading them from the provider again.
+   */
+  private static void digestPrefix(FileChannel target, long length, @Nullable ContentDigest digest,
+                                   @Nullable ContentDigest hash) throws IOException {
+    ByteBuffer buffer = BUFFER.get();
+    long position = 0;
+    while (position < length) {
+      buffer.clear();
+      if (length - position < buffer.capacity()) {
+        buffer.limit((int) (length - position));
+      }
+      int read = target.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Resumed copy is shorter than " + length + " bytes");
+      }
+      buffer.flip();
+      if (digest != null) {
+        digest.update(buffer);
+        buffer.rewind();
+      }
+      if (hash != null) {
+        hash.update(buffer);
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Reports progress of a resumed copy from its first byte and flushes the destination before
+   * each checkpoint.
+   */
+  private static class Committer implements ProgressListener {
+    private final FileChannel target;
+    private final long offset;
+    @Nullable
+    private final ProgressListener listener;
+    @Nullable
+    private final Checkpoint checkpoint;
+    private long committed;
+
+    Committer(FileChannel target, long offset, @Nullable ProgressListener listener,
+              @Nullable Checkpoint checkpoint) {
+      this.target = target;
+      this.offset = offset;
+      this.listener = listener;
+      this.checkpoint = checkpoint;
+      this.committed = offset;
+    }
+
+    @Override
+    public void onProgress(long bytesCopied, long totalBytes) throws IOException {
+      long position = offset + bytesCopied;
+      // before the listener, which may abort the copy
+      if (checkpoint != null && position - committed >= CHECKPOINT_BYTES) {
+        target.force(false);
+        committed = position;
+        checkpoint.onCommitted(position);
+      }
+      if (listener != null) {
+        listener.onProgress(position, totalBytes >= 0 ? offset + totalBytes : totalBytes);
+      }
+    }
+  }
+
+  static long transfer(FileChannel source, FileChannel target, long start, long length,
+                        ProgressListener listener) throws IOException {
+    long copied = 0;
+    while (copied < length) {
+      long count = source.transferTo(start + copied, Math.min(TRANSFER_SLICE, length - copied), target);
+      if (count <= 0) {
+        break;
+      }
+      copied += count;
+      if (listener != null) {
+        listener.onProgress(copied, length);
+      }
+    }
+    return copied;
+  }
+
+  /**
+   * @param length exact number of bytes to copy, or a negative value to copy until end of stream.
+   */
+  static long bufferedCopy(FileChannel source, FileChannel target, long length, ContentDigest digest,
+                           ContentDigest hash, ProgressListener listener) throws IOException {
+    ByteBuffer buffer = BUFFER.get();
+    long copied = 0;
+    while (length < 0 || copied < length) {
+      buffer.clear();
+      if (length >= 0 && length - copied < buffer.capacity()) {
+        buffer.limit((int) (length - copied));
+      }
+
+      int read = source.read(buffer);
+      if (read < 0) {
+        break;
+      }
+
+      buffer.flip();
+      if (digest != null) {
+        digest.update(buffer);
+        buffer.rewind();
+      }
+      if (hash != null) {
+        hash.update(buffer);
+        buffer.rewind();
+      }
+      while (buffer.hasRemaining()) {
+        target.write(buffer);
+      }
+      copied += read;
+      if (listener != null) {
+        listener.onProgress(copied, length);
+      }
+    }
+    return copied;
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to close " + closeable, e);
+    }
+  }
+}
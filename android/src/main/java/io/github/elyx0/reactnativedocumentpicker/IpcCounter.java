@@ -0,0 +1,52 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the calls made into document providers, each one of them is a binder round-trip to the
+ * provider process. Every pick gets its own counter which also feeds {@link #TOTAL}.
+ */
+class IpcCounter {
+  static final IpcCounter TOTAL = new IpcCounter(null);
+
+  private final IpcCounter parent;
+  private final AtomicInteger queries = new AtomicInteger();
+  private final AtomicInteger typeLookups = new AtomicInteger();
+
+  IpcCounter() {
+    this(TOTAL);
+  }
+
+  private IpcCounter(IpcCounter parent) {
+    this.parent = parent;
+  }
+
+  void countQuery() {
+    queries.incrementAndGet();
+    if (parent != null) {
+      parent.countQuery();
+    }
+  }
+
+  void countGetType() {
+    typeLookups.incrementAndGet();
+    if (parent != null) {
+      parent.countGetType();
+    }
+  }
+
+  int total() {
+    return queries.get() + typeLookups.get();
+  }
+
+  WritableMap toMap() {
+    WritableMap map = Arguments.createMap();
+    map.putInt("query", queries.get());
+    map.putInt("getType", typeLookups.get());
+    map.putInt("total", total());
+    return map;
+  }
+}
@@ -0,0 +1,122 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the file paths of many MediaProvider documents with one {@code _id IN (...)} query
+ * per media collection instead of one query per document.
+ */
+class MediaPathBatch {
+  private static final String TAG = "RNDocumentPicker";
+  // stays well below SQLITE_MAX_VARIABLE_NUMBER, which is 999 on older devices
+  private static final int MAX_IDS_PER_QUERY = 500;
+
+  private static final String COLUMN_ID = MediaStore.MediaColumns._ID;
+  private static final String COLUMN_DATA = MediaStore.MediaColumns.DATA;
+
+  /**
+   * @return the path of every media document that could be resolved, keyed by its uri string.
+   * Documents missing from the result should be resolved one by one.
+   */
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  static Map<String, String> resolve(Context context, List<Uri> uris, IpcCounter ipc) {
+    Map<String, String> paths = new HashMap<>();
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+      return paths;
+    }
+
+    // collection uri -> (media id -> document uri)
+    Map<Uri, Map<String, String>> groups = new LinkedHashMap<>();
+    for (Uri uri : uris) {
+      if (uri == null || !DocumentPickerModule.isMediaDocument(uri)) {
+        continue;
+      }
+
+      final String[] split = DocumentsContract.getDocumentId(uri).split(":");
+      Uri contentUri = contentUriFor(split[0]);
+      if (contentUri == null || split.length < 2) {
+        continue;
+      }
+
+      Map<String, String> group = groups.get(contentUri);
+      if (group == null) {
+        group = new LinkedHashMap<>();
+        groups.put(contentUri, group);
+      }
+      group.put(split[1], uri.toString());
+    }
+
+    for (Map.Entry<Uri, Map<String, String>> group : groups.entrySet()) {
+      // a single document gains nothing from batching, leave it to the regular path
+      if (group.getValue().size() < 2) {
+        continue;
+      }
+
+      List<String> ids = new ArrayList<>(group.getValue().keySet());
+      for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+        List<String> chunk = ids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, ids.size()));
+        queryChunk(context, group.getKey(), chunk, group.getValue(), paths, ipc);
+      }
+    }
+
+    return paths;
+  }
+
+  private static void queryChunk(Context context, Uri contentUri, List<String> ids, Map<String, String> documents,
+                                 Map<String, String> paths, IpcCounter ipc) {
+    StringBuilder selection = new StringBuilder(COLUMN_ID).append(" IN (");
+    for (int i = 0; i < ids.size(); ++i) {
+      selection.append(i == 0 ? "?" : ",?");
+    }
+    selection.append(')');
+
+    Cursor cursor = null;
+    try {
+      ipc.countQuery();
+      cursor = context.getContentResolver().query(contentUri, new String[]{COLUMN_ID, COLUMN_DATA},
+          selection.toString(), ids.toArray(new String[ids.size()]), null);
+      if (cursor == null) {
+        return;
+      }
+
+      int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+      int dataIndex = cursor.getColumnIndexOrThrow(COLUMN_DATA);
+      while (cursor.moveToNext()) {
+        String document = documents.get(cursor.getString(idIndex));
+        if (document != null && !cursor.isNull(dataIndex)) {
+          paths.put(document, cursor.getString(dataIndex));
+        }
+      }
+    } catch (Exception e) {
+      Log.w(TAG, "Batched media query failed, falling back to per document queries", e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+
+  static Uri contentUriFor(String type) {
+    if ("image".equals(type)) {
+      return MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+    } else if ("video".equals(type)) {
+      return MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+    } else if ("audio".equals(type)) {
+      return MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+    }
+    return null;
+  }
+}
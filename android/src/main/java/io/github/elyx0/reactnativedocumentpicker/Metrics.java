@@ -0,0 +1,156 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cheap instrumentation of the pick pipeline: counters plus a latency histogram per stage.
+ *
+ * Recording is a handful of atomic increments, so it stays enabled all the time. Verbose tracing
+ * goes to logcat and is off by default, callers check {@link #isTracing()} before building
+ * messages.
+ */
+final class Metrics {
+  private static final String TAG = "RNDocumentPicker";
+
+  static final String STAGE_QUERY = "query";
+  static final String STAGE_PATH = "path";
+  static final String STAGE_COPY = "copy";
+  static final String STAGE_SERIALIZE = "serialize";
+
+  static final String COUNTER_PICKS = "picks";
+  static final String COUNTER_DOCUMENTS = "documents";
+  static final String COUNTER_COPIES = "copies";
+  static final String COUNTER_BYTES_COPIED = "bytesCopied";
+  static final String COUNTER_CACHE_HITS = "cacheHits";
+  static final String COUNTER_PATH_CACHE_HITS = "pathCacheHits";
+  static final String COUNTER_RESUMED_COPIES = "resumedCopies";
+
+  // upper bounds of the histogram buckets, the last bucket holds everything slower
+  private static final long[] BUCKET_BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+  private static final Map<String, Histogram> STAGES;
+  private static final Map<String, AtomicLong> COUNTERS;
+
+  static {
+    Map<String, Histogram> stages = new LinkedHashMap<>();
+    for (String stage : new String[]{STAGE_QUERY, STAGE_PATH, STAGE_COPY, STAGE_SERIALIZE}) {
+      stages.put(stage, new Histogram());
+    }
+    STAGES = Collections.unmodifiableMap(stages);
+
+    Map<String, AtomicLong> counters = new LinkedHashMap<>();
+    for (String counter : new String[]{COUNTER_PICKS, COUNTER_DOCUMENTS, COUNTER_COPIES, COUNTER_BYTES_COPIED,
+        COUNTER_CACHE_HITS, COUNTER_PATH_CACHE_HITS, COUNTER_RESUMED_COPIES}) {
+      counters.put(counter, new AtomicLong());
+    }
+    COUNTERS = Collections.unmodifiableMap(counters);
+  }
+
+  private static volatile boolean tracing;
+
+  private Metrics() {
+  }
+
+  private static class Histogram {
+    final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong totalNanos = new AtomicLong();
+    final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+      long millis = nanos / 1000000;
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[bucket]) {
+        bucket++;
+      }
+      buckets.incrementAndGet(bucket);
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+
+      long max = maxNanos.get();
+      while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+        max = maxNanos.get();
+      }
+    }
+
+    WritableMap toMap() {
+      WritableMap map = Arguments.createMap();
+      long samples = count.get();
+      map.putDouble("count", samples);
+      map.putDouble("meanMs", samples == 0 ? 0 : totalNanos.get() / 1e6 / samples);
+      map.putDouble("maxMs", maxNanos.get() / 1e6);
+
+      WritableArray bounds = Arguments.createArray();
+      for (long bound : BUCKET_BOUNDS_MS) {
+        bounds.pushDouble(bound);
+      }
+      map.putArray("bucketBoundsMs", bounds);
+
+      WritableArray counts = Arguments.createArray();
+      for (int i = 0; i < buckets.length(); ++i) {
+        counts.pushDouble(buckets.get(i));
+      }
+      map.putArray("buckets", counts);
+      return map;
+    }
+  }
+
+  static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * @param startNanos value returned by {@link #start()} when the stage began.
+   */
+  static void record(String stage, long startNanos) {
+    STAGES.get(stage).record(System.nanoTime() - startNanos);
+  }
+
+  static void increment(String counter) {
+    add(counter, 1);
+  }
+
+  static void add(String counter, long delta) {
+    COUNTERS.get(counter).addAndGet(delta);
+  }
+
+  static boolean isTracing() {
+    return tracing;
+  }
+
+  static void setTracing(boolean enabled) {
+    tracing = enabled;
+  }
+
+  static void trace(String message) {
+    if (tracing) {
+      Log.v(TAG, message);
+    }
+  }
+
+  static WritableMap stagesToMap() {
+    WritableMap map = Arguments.createMap();
+    for (Map.Entry<String, Histogram> stage : STAGES.entrySet()) {
+      map.putMap(stage.getKey(), stage.getValue().toMap());
+    }
+    return map;
+  }
+
+  static WritableMap countersToMap() {
+    WritableMap map = Arguments.createMap();
+    for (Map.Entry<String, AtomicLong> counter : COUNTERS.entrySet()) {
+      map.putDouble(counter.getKey(), counter.getValue().get());
+    }
+    return map;
+  }
+}
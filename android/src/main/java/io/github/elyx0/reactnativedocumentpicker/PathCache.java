@@ -0,0 +1,83 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoized document URI to local path resolutions, so picking or materializing the same document
+ * again does not repeat the provider queries and file probes behind {@code getPath}.
+ *
+ * Entries expire after {@link #TTL_MS} and are dropped as soon as the provider reports a different
+ * last modified time for the document. Paths of copies in the document cache are checked to still
+ * exist, since the cache may evict them at any time.
+ */
+class PathCache {
+  static final PathCache SHARED = new PathCache(512, 5 * 60 * 1000);
+
+  private static class Entry {
+    final String path;
+    final long lastModified;
+    final boolean copy;
+    final long expiresAt;
+
+    Entry(String path, long lastModified, boolean copy, long expiresAt) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.copy = copy;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final int maxEntries;
+  private final long ttlMs;
+  private final LinkedHashMap<String, Entry> entries;
+
+  PathCache(final int maxEntries, long ttlMs) {
+    this.maxEntries = maxEntries;
+    this.ttlMs = ttlMs;
+    // access ordered, the eldest entry is the least recently used one
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > PathCache.this.maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param lastModified last modified time the provider reports now, or -1 when unknown in which
+   *                     case only the TTL applies.
+   * @return the memoized path, or null if there is none or it is stale.
+   */
+  @Nullable
+  synchronized String get(String uri, long lastModified) {
+    Entry entry = entries.get(uri);
+    if (entry == null) {
+      return null;
+    }
+
+    boolean stale = SystemClock.elapsedRealtime() >= entry.expiresAt
+        || (lastModified >= 0 && entry.lastModified != lastModified)
+        || (entry.copy && !new File(entry.path).isFile());
+    if (stale) {
+      entries.remove(uri);
+      return null;
+    }
+    return entry.path;
+  }
+
+  /**
+   * @param copy whether the path points into the document cache rather than at the original.
+   */
+  synchronized void put(String uri, long lastModified, String path, boolean copy) {
+    entries.put(uri, new Entry(path, lastModified, copy, SystemClock.elapsedRealtime() + ttlMs));
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+}
@@ -0,0 +1,68 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+
+/**
+ * Maps the documents of one provider authority to local file paths.
+ *
+ * Resolvers are registered by authority on {@link DocumentPickerPackage}, which lets an app add
+ * fast paths for its own providers or replace the built-in ones.
+ */
+public interface PathResolver {
+  /**
+   * What a resolution had to do, reported in the stats of each authority.
+   */
+  enum Cost {
+    // derived from the URI alone
+    NONE,
+    // needed at least one provider query
+    QUERY,
+    // the document was copied into the cache
+    COPY,
+    // an earlier copy in the cache was reused
+    CACHED
+  }
+
+  final class Resolution {
+    public final String path;
+    public final Cost cost;
+
+    public Resolution(String path, Cost cost) {
+      this.path = path;
+      this.cost = cost;
+    }
+  }
+
+  final class Request {
+    private final Context context;
+    private final Uri uri;
+    @Nullable
+    final DocumentRow row;
+    final DocumentPickerModule.PickOptions options;
+
+    Request(Context context, Uri uri, @Nullable DocumentRow row, DocumentPickerModule.PickOptions options) {
+      this.context = context;
+      this.uri = uri;
+      this.row = row;
+      this.options = options;
+    }
+
+    public Context getContext() {
+      return context;
+    }
+
+    public Uri getUri() {
+      return uri;
+    }
+  }
+
+  /**
+   * Called on a background thread.
+   *
+   * @return the local path of the document, or null if it has none.
+   */
+  @Nullable
+  Resolution resolve(Request request);
+}
@@ -0,0 +1,260 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.annotation.TargetApi;
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.DocumentsContract;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of the {@link PathResolver}s, dispatching on the authority of the document URI.
+ *
+ * Resolvers registered by the app are tried first for their authority, a null result falls
+ * through to the built-in resolver. Built-in resolvers of document providers are only used for
+ * document URIs, those of plain content providers (Google Photos) only for other content URIs,
+ * which otherwise end up in a generic {@code _data} lookup. Every resolution is
+ * counted per authority and cost so slow providers show up in the stats.
+ */
+class PathResolvers {
+  static final String EXTERNAL_STORAGE_AUTHORITY = "com.android.externalstorage.documents";
+  static final String DOWNLOADS_AUTHORITY = "com.android.providers.downloads.documents";
+  static final String MEDIA_AUTHORITY = "com.android.providers.media.documents";
+  static final String GOOGLE_PHOTOS_AUTHORITY = "com.google.android.apps.photos.content";
+
+  private static final String SCHEME_FILE = "file";
+  private static final String SCHEME_CONTENT = "content";
+
+  // indexes into the per authority counters, the last one counts documents without a path
+  private static final PathResolver.Cost[] COSTS = PathResolver.Cost.values();
+  private static final int UNRESOLVED = COSTS.length;
+
+  static final PathResolvers SHARED = new PathResolvers();
+
+  private final Map<String, PathResolver> custom = new ConcurrentHashMap<>();
+  private final Map<String, PathResolver> documentProviders = new ConcurrentHashMap<>();
+  private final Map<String, PathResolver> contentProviders = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLongArray> stats = new ConcurrentHashMap<>();
+  private volatile String localStorageAuthority = DocumentPickerModule.AUTHORITY;
+
+  private PathResolvers() {
+    contentProviders.put(GOOGLE_PHOTOS_AUTHORITY, new GooglePhotos());
+    documentProviders.put(localStorageAuthority, new LocalStorage());
+    documentProviders.put(EXTERNAL_STORAGE_AUTHORITY, new ExternalStorage());
+    documentProviders.put(DOWNLOADS_AUTHORITY, new Downloads());
+    documentProviders.put(MEDIA_AUTHORITY, new Media());
+  }
+
+  void register(String authority, PathResolver resolver) {
+    custom.put(authority, resolver);
+  }
+
+  /**
+   * Sets the authority of the app's own provider whose document ids are absolute paths, in place
+   * of the {@link DocumentPickerModule#AUTHORITY} placeholder.
+   */
+  synchronized void setLocalStorageAuthority(String authority) {
+    PathResolver resolver = documentProviders.remove(localStorageAuthority);
+    localStorageAuthority = authority;
+    documentProviders.put(authority, resolver);
+  }
+
+  String getLocalStorageAuthority() {
+    return localStorageAuthority;
+  }
+
+  @Nullable
+  String resolve(PathResolver.Request request) {
+    Uri uri = request.getUri();
+    String authority = uri.getAuthority();
+    String scheme = uri.getScheme();
+
+    PathResolver.Resolution resolution = null;
+    if (SCHEME_FILE.equalsIgnoreCase(scheme)) {
+      resolution = new PathResolver.Resolution(uri.getPath(), PathResolver.Cost.NONE);
+    } else {
+      PathResolver resolver = authority != null ? custom.get(authority) : null;
+      if (resolver != null) {
+        resolution = resolver.resolve(request);
+      }
+
+      if (resolution == null) {
+        if (isDocumentUri(request)) {
+          resolver = authority != null ? documentProviders.get(authority) : null;
+          if (resolver != null) {
+            resolution = resolver.resolve(request);
+          }
+        } else if (SCHEME_CONTENT.equalsIgnoreCase(scheme)) {
+          resolver = authority != null ? contentProviders.get(authority) : null;
+          resolution = (resolver != null ? resolver : CONTENT).resolve(request);
+        }
+      }
+    }
+
+    String key = authority != null ? authority : String.valueOf(scheme);
+    boolean resolved = resolution != null && resolution.path != null;
+    count(key, resolved ? resolution.cost.ordinal() : UNRESOLVED);
+    if (Metrics.isTracing()) {
+      Metrics.trace("Resolved " + uri + (resolved ? " with cost " + resolution.cost : " without a path"));
+    }
+    return resolved ? resolution.path : null;
+  }
+
+  private void count(String key, int index) {
+    AtomicLongArray counters = stats.get(key);
+    if (counters == null) {
+      AtomicLongArray created = new AtomicLongArray(COSTS.length + 1);
+      counters = stats.putIfAbsent(key, created);
+      if (counters == null) {
+        counters = created;
+      }
+    }
+    counters.incrementAndGet(index);
+  }
+
+  /**
+   * @return per authority counts of resolutions by cost, e.g. {@code {"com.android.providers.downloads.documents":
+   * {none: 0, query: 3, copy: 1, cached: 2, unresolved: 0}}}.
+   */
+  WritableMap statsToMap() {
+    WritableMap map = Arguments.createMap();
+    for (Map.Entry<String, AtomicLongArray> entry : stats.entrySet()) {
+      AtomicLongArray counters = entry.getValue();
+      WritableMap costs = Arguments.createMap();
+      for (PathResolver.Cost cost : COSTS) {
+        costs.putDouble(cost.name().toLowerCase(Locale.ROOT), counters.get(cost.ordinal()));
+      }
+      costs.putDouble("unresolved", counters.get(UNRESOLVED));
+      map.putMap(entry.getKey(), costs);
+    }
+    return map;
+  }
+
+  private static boolean isDocumentUri(PathResolver.Request request) {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+        && DocumentsContract.isDocumentUri(request.getContext(), request.getUri());
+  }
+
+  @Nullable
+  private static PathResolver.Resolution resolution(@Nullable String path, PathResolver.Cost cost) {
+    return path != null ? new PathResolver.Resolution(path, cost) : null;
+  }
+
+  // LocalStorageProvider, the document id is the path
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static class LocalStorage implements PathResolver {
+    @Override
+    public Resolution resolve(Request request) {
+      return resolution(DocumentsContract.getDocumentId(request.getUri()), Cost.NONE);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static class ExternalStorage implements PathResolver {
+    @Override
+    public Resolution resolve(Request request) {
+      final String docId = DocumentsContract.getDocumentId(request.getUri());
+      final String[] split = docId.split(":");
+      final String type = split[0];
+
+      if ("primary".equalsIgnoreCase(type)) {
+        return resolution(Environment.getExternalStorageDirectory() + "/" + split[1], Cost.NONE);
+      } else if ("home".equalsIgnoreCase(type)) {
+        return resolution(Environment.getExternalStorageDirectory() + "/documents/" + split[1], Cost.NONE);
+      }
+      return null;
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static class Downloads implements PathResolver {
+    private static final String[] CONTENT_URI_PREFIXES = {
+        "content://downloads/public_downloads",
+        "content://downloads/my_downloads"
+    };
+
+    @Override
+    public Resolution resolve(Request request) {
+      Uri uri = request.getUri();
+      final String id = DocumentsContract.getDocumentId(uri);
+
+      if (id != null && id.startsWith("raw:")) {
+        return resolution(id.substring(4), Cost.NONE);
+      }
+
+      for (String contentUriPrefix : CONTENT_URI_PREFIXES) {
+        try {
+          Uri contentUri = ContentUris.withAppendedId(Uri.parse(contentUriPrefix), Long.valueOf(id));
+          String path = DocumentPickerModule.getDataColumn(request.getContext(), contentUri, null, null,
+              request.options.ipc);
+          if (path != null) {
+            return resolution(path, Cost.QUERY);
+          }
+        } catch (Exception e) {
+        }
+      }
+
+      if (request.options.lazyCopy) {
+        return null;
+      }
+
+      // path could not be retrieved using ContentResolver, therefore copy file to accessible cache
+      DocumentRow row = request.row != null
+          ? request.row
+          : DocumentRow.query(request.getContext(), uri, request.options.ipc);
+      String path = DocumentPickerModule.cacheDocument(request.getContext(), uri, row, request.options);
+      return resolution(path, request.options.cachedCopies.remove(uri.toString()) ? Cost.CACHED : Cost.COPY);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static class Media implements PathResolver {
+    @Override
+    public Resolution resolve(Request request) {
+      Uri uri = request.getUri();
+      // resolved by the batched query of the whole selection
+      String prefetched = request.options.prefetchedPaths.get(uri.toString());
+      if (prefetched != null) {
+        return resolution(prefetched, Cost.QUERY);
+      }
+
+      final String docId = DocumentsContract.getDocumentId(uri);
+      final String[] split = docId.split(":");
+      Uri contentUri = MediaPathBatch.contentUriFor(split[0]);
+      return resolution(DocumentPickerModule.getDataColumn(request.getContext(), contentUri, "_id=?",
+          new String[]{split[1]}, request.options.ipc), Cost.QUERY);
+    }
+  }
+
+  // returns the remote address
+  private static class GooglePhotos implements PathResolver {
+    @Override
+    public Resolution resolve(Request request) {
+      return resolution(request.getUri().getLastPathSegment(), Cost.NONE);
+    }
+  }
+
+  // MediaStore and other content providers exposing a _data column
+  private static final PathResolver CONTENT = new PathResolver() {
+    @Override
+    public Resolution resolve(Request request) {
+      DocumentRow row = request.row;
+      // the _data column was part of the metadata query already
+      if (row != null && row.hasDataColumn) {
+        return resolution(row.dataPath != null ? row.dataPath : DocumentPickerModule.uriToPath(request.getUri()),
+            Cost.NONE);
+      }
+      return resolution(DocumentPickerModule.getDataColumn(request.getContext(), request.getUri(), null, null,
+          request.options.ipc), Cost.QUERY);
+    }
+  };
+}
@@ -0,0 +1,86 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Limits checked against the metadata row of each picked document, before its path is resolved,
+ * so documents the app would reject are never copied or hashed.
+ */
+class PickFilter {
+  static final String REASON_TOO_LARGE = "tooLarge";
+  static final String REASON_TOO_SMALL = "tooSmall";
+  static final String REASON_EXTENSION = "extension";
+  static final String REASON_MAX_COUNT = "maxCount";
+
+  /**
+   * Thrown from the copy of a document whose provider did not report its size once the copy
+   * grows beyond {@link #maxSize}.
+   */
+  static class SizeLimitExceededException extends IOException {
+    SizeLimitExceededException(String message) {
+      super(message);
+    }
+  }
+
+  // negative values disable the limit
+  long minSize = -1;
+  long maxSize = -1;
+  int maxCount = -1;
+  // lower case extensions without the dot, null allows every name
+  @Nullable
+  Set<String> extensions;
+
+  void setExtensions(Collection<String> values) {
+    extensions = new HashSet<>();
+    for (String value : values) {
+      extensions.add(normalizeExtension(value));
+    }
+  }
+
+  boolean isExceedingCount(int index) {
+    return maxCount >= 0 && index >= maxCount;
+  }
+
+  /**
+   * @return why the document is rejected, or null if it passes. Sizes are only checked when the
+   * provider reports one.
+   */
+  @Nullable
+  String reject(DocumentRow row) {
+    if (row.size >= 0) {
+      if (maxSize >= 0 && row.size > maxSize) {
+        return REASON_TOO_LARGE;
+      }
+      if (minSize >= 0 && row.size < minSize) {
+        return REASON_TOO_SMALL;
+      }
+    }
+    if (extensions != null && !hasExtension(row.displayName, extensions)) {
+      return REASON_EXTENSION;
+    }
+    return null;
+  }
+
+  /**
+   * @return whether a copy of a document of unknown size has to be watched for {@link #maxSize}.
+   */
+  boolean limitsCopyOf(DocumentRow row) {
+    return maxSize >= 0 && row.size < 0;
+  }
+
+  static String normalizeExtension(String value) {
+    String extension = value.startsWith(".") ? value.substring(1) : value;
+    return extension.toLowerCase(Locale.ROOT);
+  }
+
+  static boolean hasExtension(@Nullable String name, Set<String> extensions) {
+    int dot = name == null ? -1 : name.lastIndexOf('.');
+    return dot >= 0 && extensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+}
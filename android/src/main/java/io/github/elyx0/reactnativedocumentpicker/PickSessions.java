@@ -0,0 +1,70 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pending picker activities, each one with its own request code, promise and options so several
+ * pickers can be in flight at the same time.
+ */
+class PickSessions {
+  static class Session {
+    final int requestCode;
+    final Promise promise;
+    final DocumentPickerModule.PickOptions options;
+
+    private Session(int requestCode, Promise promise, DocumentPickerModule.PickOptions options) {
+      this.requestCode = requestCode;
+      this.promise = promise;
+      this.options = options;
+    }
+  }
+
+  private final int firstRequestCode;
+  private final int maxSessions;
+  private final Map<Integer, Session> sessions = new HashMap<>();
+  private int nextOffset;
+
+  /**
+   * Request codes are taken from {@code [firstRequestCode, firstRequestCode + maxSessions)}, which
+   * has to stay within the lower 16 bits that activities accept.
+   */
+  PickSessions(int firstRequestCode, int maxSessions) {
+    this.firstRequestCode = firstRequestCode;
+    this.maxSessions = maxSessions;
+  }
+
+  /**
+   * @return the new session, or null when every request code is taken by a pending session.
+   */
+  synchronized Session open(Promise promise, DocumentPickerModule.PickOptions options) {
+    for (int attempt = 0; attempt < maxSessions; ++attempt) {
+      int requestCode = firstRequestCode + nextOffset;
+      nextOffset = (nextOffset + 1) % maxSessions;
+      if (!sessions.containsKey(requestCode)) {
+        Session session = new Session(requestCode, promise, options);
+        sessions.put(requestCode, session);
+        return session;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes and returns the session of a request code, null if it does not belong to a pending
+   * session (e.g. another module's activity result).
+   */
+  synchronized Session take(int requestCode) {
+    return sessions.remove(requestCode);
+  }
+
+  synchronized List<Session> takeAll() {
+    List<Session> pending = new ArrayList<>(sessions.values());
+    sessions.clear();
+    return pending;
+  }
+}
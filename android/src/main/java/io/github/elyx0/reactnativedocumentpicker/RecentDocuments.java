@@ -0,0 +1,206 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Small on-disk index of the documents picked with a persisted URI permission, most recent first,
+ * so they can be reopened without going through the system picker again.
+ *
+ * The permission of an entry is released along with it, the system only lets an app hold a
+ * limited number of them.
+ */
+class RecentDocuments {
+  private static final String TAG = "RNDocumentPicker";
+  private static final String INDEX_FILE = "RNDocumentPicker-recent.json";
+  static final int MAX_ENTRIES = 50;
+
+  private static RecentDocuments instance;
+
+  static synchronized RecentDocuments get(Context context) {
+    if (instance == null) {
+      Context application = context.getApplicationContext();
+      instance = new RecentDocuments(application, new File(application.getFilesDir(), INDEX_FILE));
+    }
+    return instance;
+  }
+
+  static class Entry {
+    final String uri;
+    @Nullable
+    final String name;
+    @Nullable
+    final String type;
+    final long size;
+    final long lastModified;
+    final long openedAt;
+
+    Entry(String uri, String name, String type, long size, long lastModified, long openedAt) {
+      this.uri = uri;
+      this.name = name;
+      this.type = type;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.openedAt = openedAt;
+    }
+
+    static Entry fromRow(String uri, DocumentRow row) {
+      return new Entry(uri, row.displayName, row.mimeType, row.size, row.lastModified, System.currentTimeMillis());
+    }
+  }
+
+  private final Context context;
+  private final File indexFile;
+  // insertion ordered, the last entry is the most recently opened one
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+  private boolean loaded;
+
+  private RecentDocuments(Context context, File indexFile) {
+    this.context = context;
+    this.indexFile = indexFile;
+  }
+
+  void record(Entry entry) {
+    List<String> evicted = new ArrayList<>();
+    synchronized (this) {
+      ensureLoaded();
+      entries.remove(entry.uri);
+      entries.put(entry.uri, entry);
+
+      Iterator<String> eldest = entries.keySet().iterator();
+      while (entries.size() > MAX_ENTRIES && eldest.hasNext()) {
+        evicted.add(eldest.next());
+        eldest.remove();
+      }
+      persist();
+    }
+    releasePermissions(evicted);
+  }
+
+  @Nullable
+  synchronized Entry find(String uri) {
+    ensureLoaded();
+    return entries.get(uri);
+  }
+
+  /**
+   * @return the entries, most recently opened first.
+   */
+  synchronized List<Entry> list() {
+    ensureLoaded();
+    List<Entry> list = new ArrayList<>(entries.values());
+    Collections.reverse(list);
+    return list;
+  }
+
+  void removeAll(Collection<String> uris) {
+    List<String> removed = new ArrayList<>();
+    synchronized (this) {
+      ensureLoaded();
+      for (String uri : uris) {
+        if (entries.remove(uri) != null) {
+          removed.add(uri);
+        }
+      }
+      if (!removed.isEmpty()) {
+        persist();
+      }
+    }
+    releasePermissions(removed);
+  }
+
+  // outside the monitor, each release is a call into the system server
+  private void releasePermissions(List<String> uris) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+      return;
+    }
+    for (String uri : uris) {
+      releasePermission(uri);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private void releasePermission(String uri) {
+    try {
+      context.getContentResolver().releasePersistableUriPermission(Uri.parse(uri), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    } catch (SecurityException e) {
+      // already revoked, e.g. the document was deleted
+    }
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+
+    if (!indexFile.isFile()) {
+      return;
+    }
+
+    try {
+      JSONArray array = new JSONArray(DocumentCache.readFile(indexFile));
+      for (int i = 0; i < array.length(); ++i) {
+        JSONObject json = array.getJSONObject(i);
+        Entry entry = new Entry(json.getString("uri"),
+            json.isNull("name") ? null : json.optString("name"),
+            json.isNull("type") ? null : json.optString("type"),
+            json.optLong("size", -1),
+            json.optLong("lastModified", -1),
+            json.optLong("openedAt", 0));
+        entries.put(entry.uri, entry);
+      }
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Discarding unreadable recent documents index", e);
+      entries.clear();
+    }
+  }
+
+  private void persist() {
+    try {
+      JSONArray array = new JSONArray();
+      for (Entry entry : entries.values()) {
+        JSONObject json = new JSONObject();
+        json.put("uri", entry.uri);
+        json.put("name", entry.name == null ? JSONObject.NULL : entry.name);
+        json.put("type", entry.type == null ? JSONObject.NULL : entry.type);
+        json.put("size", entry.size);
+        json.put("lastModified", entry.lastModified);
+        json.put("openedAt", entry.openedAt);
+        array.put(json);
+      }
+
+      File partial = new File(indexFile.getPath() + ".tmp");
+      FileOutputStream out = new FileOutputStream(partial);
+      try {
+        out.write(array.toString().getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+      if (!partial.renameTo(indexFile)) {
+        Log.w(TAG, "Unable to replace recent documents index");
+      }
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Unable to persist recent documents index", e);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.net.Uri;
+
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves picked document URIs on a bounded worker pool.
+ *
+ * Each call to {@link #resolve} starts at most {@code concurrency} workers which pull URIs off a
+ * shared cursor, so one large selection can not starve the pool for other callers. Results are
+ * stored by index and handed back in the same order as the input list.
+ */
+class ResolutionPipeline implements Executor {
+  interface Resolver {
+    WritableMap resolve(int index, Uri uri) throws Exception;
+  }
+
+  interface Callback {
+    /**
+     * Called from a worker thread as soon as the document at {@code index} is resolved, in
+     * completion order rather than input order.
+     */
+    void onResolved(int index, WritableMap result);
+
+    void onComplete(WritableMap[] results);
+
+    void onError(Exception e);
+  }
+
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private final ExecutorService executor;
+  private final int poolSize;
+
+  ResolutionPipeline(int poolSize) {
+    this.poolSize = poolSize;
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RNDocumentPicker-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+  }
+
+  /**
+   * @param concurrency maximum number of URIs resolved at the same time, clamped to the pool size.
+   */
+  void resolve(final List<Uri> uris, int concurrency, final Resolver resolver, final Callback callback) {
+    final int count = uris.size();
+    final WritableMap[] results = new WritableMap[count];
+
+    if (count == 0) {
+      callback.onComplete(results);
+      return;
+    }
+
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger remaining = new AtomicInteger(count);
+    final AtomicBoolean failed = new AtomicBoolean();
+
+    int workers = Math.min(Math.max(1, Math.min(concurrency, poolSize)), count);
+    for (int w = 0; w < workers; ++w) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          int index;
+          while (!failed.get() && (index = next.getAndIncrement()) < count) {
+            try {
+              results[index] = resolver.resolve(index, uris.get(index));
+              callback.onResolved(index, results[index]);
+            } catch (Throwable t) {
+              // errors too, an escaping one would leave remaining above zero and the pick unsettled
+              if (failed.compareAndSet(false, true)) {
+                callback.onError(t instanceof Exception ? (Exception) t : new RuntimeException(t));
+              }
+              return;
+            }
+
+            // the last decrement happens-after every other worker's write into results
+            if (remaining.decrementAndGet() == 0) {
+              callback.onComplete(results);
+            }
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Runs a single background task, e.g. a deferred copy, on the same pool.
+   */
+  @Override
+  public void execute(Runnable task) {
+    executor.execute(task);
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,392 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.Point;
+import android.graphics.pdf.PdfRenderer;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Small previews of picked documents, encoded once and kept on disk.
+ *
+ * Providers that advertise {@code FLAG_SUPPORTS_THUMBNAIL} are asked for their own thumbnail, which
+ * is usually precomputed. Otherwise images are decoded subsampled, videos from a sync frame and
+ * PDFs from their first page, so a full resolution bitmap is never held in memory.
+ *
+ * Encoded files are keyed by document URI, last modified time, size and requested bounds. The
+ * last results are also kept in memory by URI and bounds, so scrolling back over a list does not
+ * even query the provider. Concurrent requests for the same thumbnail share a single decode.
+ */
+class ThumbnailCache {
+  interface Callback {
+    void onThumbnail(@Nullable Thumbnail thumbnail);
+
+    void onError(Exception e);
+  }
+
+  static class Thumbnail {
+    final File file;
+    final int width;
+    final int height;
+
+    Thumbnail(File file, int width, int height) {
+      this.file = file;
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  static final String THUMBNAILS_DIR = "thumbnails";
+
+  private static final String TAG = "RNDocumentPicker";
+  private static final int MEMORY_ENTRIES = 256;
+  private static final long MAX_DISK_BYTES = 32L * 1024 * 1024;
+  private static final int JPEG_QUALITY = 85;
+
+  private static ThumbnailCache instance;
+
+  static synchronized ThumbnailCache get(Context context) {
+    if (instance == null) {
+      instance = new ThumbnailCache(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  private final Context context;
+  private final File dir;
+  private final LruCache<String, Thumbnail> memory = new LruCache<>(MEMORY_ENTRIES);
+  // requests waiting for a thumbnail which is already being generated, by memory key
+  private final Map<String, List<Callback>> pending = new HashMap<>();
+
+  private ThumbnailCache(Context context) {
+    this.context = context;
+    this.dir = new File(context.getCacheDir(), THUMBNAILS_DIR);
+  }
+
+  /**
+   * Looks the thumbnail up and generates it on {@code executor} if needed. The callback gets null
+   * for documents that have no visual representation.
+   */
+  void get(final Uri uri, final int width, final int height, Executor executor, Callback callback) {
+    final String memoryKey = uri.toString() + '\n' + width + 'x' + height;
+
+    Thumbnail cached = memory.get(memoryKey);
+    if (cached != null && cached.file.isFile()) {
+      callback.onThumbnail(cached);
+      return;
+    }
+
+    synchronized (pending) {
+      List<Callback> waiting = pending.get(memoryKey);
+      if (waiting != null) {
+        waiting.add(callback);
+        return;
+      }
+      waiting = new ArrayList<>();
+      waiting.add(callback);
+      pending.put(memoryKey, waiting);
+    }
+
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          Thumbnail thumbnail = null;
+          // replaced once load returns or fails, anything else still reaches the waiters
+          Exception error = new IllegalStateException("Thumbnail of " + uri + " was not generated");
+          try {
+            thumbnail = load(uri, width, height);
+            if (thumbnail != null) {
+              memory.put(memoryKey, thumbnail);
+            }
+            error = null;
+          } catch (Exception e) {
+            error = e;
+          } catch (OutOfMemoryError e) {
+            // give up on this thumbnail rather than on the worker and the app
+            error = new IOException("Out of memory while decoding a thumbnail of " + uri, e);
+          } finally {
+            notifyWaiting(memoryKey, thumbnail, error);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      // e.g. the pool was shut down, later requests for the key would otherwise wait forever
+      notifyWaiting(memoryKey, null, e);
+    }
+  }
+
+  private void notifyWaiting(String memoryKey, @Nullable Thumbnail thumbnail, @Nullable Exception error) {
+    List<Callback> waiting;
+    synchronized (pending) {
+      waiting = pending.remove(memoryKey);
+    }
+    for (Callback waiter : waiting) {
+      if (error != null) {
+        waiter.onError(error);
+      } else {
+        waiter.onThumbnail(thumbnail);
+      }
+    }
+  }
+
+  synchronized void clear() {
+    memory.evictAll();
+    DocumentCache.deleteRecursively(dir);
+  }
+
+  @Nullable
+  private Thumbnail load(Uri uri, int width, int height) throws IOException {
+    DocumentRow row = DocumentRow.query(context, uri, new IpcCounter());
+    String key = DocumentCache.keyFor(uri, row.lastModified, row.size) + '_' + width + 'x' + height;
+
+    File file = new File(dir, key);
+    if (file.isFile()) {
+      BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(file.getPath(), bounds);
+      if (bounds.outWidth > 0) {
+        // recently used files survive the trim of the disk tier
+        file.setLastModified(System.currentTimeMillis());
+        return new Thumbnail(file, bounds.outWidth, bounds.outHeight);
+      }
+    }
+
+    Bitmap bitmap = decode(uri, row, width, height);
+    if (bitmap == null) {
+      return null;
+    }
+
+    try {
+      Bitmap scaled = fit(bitmap, width, height);
+      if (scaled != bitmap) {
+        bitmap.recycle();
+        bitmap = scaled;
+      }
+      write(bitmap, file);
+      return new Thumbnail(file, bitmap.getWidth(), bitmap.getHeight());
+    } finally {
+      bitmap.recycle();
+    }
+  }
+
+  @Nullable
+  private Bitmap decode(Uri uri, DocumentRow row, int width, int height) throws IOException {
+    if (row.supportsThumbnail() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      Bitmap bitmap = providerThumbnail(uri, width, height);
+      if (bitmap != null) {
+        return bitmap;
+      }
+    }
+
+    String type = row.mimeType != null ? row.mimeType : context.getContentResolver().getType(uri);
+    if (type == null) {
+      return null;
+    }
+    if (type.startsWith("image/")) {
+      return decodeImage(uri, width, height);
+    }
+    if (type.startsWith("video/")) {
+      return decodeVideoFrame(uri, width, height);
+    }
+    if (type.equals("application/pdf") && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      return renderPdfPage(uri, width, height);
+    }
+    return null;
+  }
+
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  @Nullable
+  private Bitmap providerThumbnail(Uri uri, int width, int height) {
+    try {
+      return DocumentsContract.getDocumentThumbnail(context.getContentResolver(), uri, new Point(width, height), null);
+    } catch (FileNotFoundException | RuntimeException e) {
+      // advertised but not delivered, decode it ourselves
+      Log.w(TAG, "Provider thumbnail unavailable for " + uri, e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private Bitmap decodeImage(Uri uri, int width, int height) throws IOException {
+    ParcelFileDescriptor descriptor = open(uri);
+    try {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, options);
+      if (options.outWidth <= 0 || options.outHeight <= 0) {
+        return null;
+      }
+
+      options.inJustDecodeBounds = false;
+      options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+      // decodeFileDescriptor reads from the current offset, go back to the start of the file
+      descriptor.close();
+      descriptor = open(uri);
+      return BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(), null, options);
+    } finally {
+      descriptor.close();
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.O_MR1)
+  @Nullable
+  private Bitmap decodeVideoFrame(Uri uri, int width, int height) throws IOException {
+    ParcelFileDescriptor descriptor = open(uri);
+    MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    try {
+      retriever.setDataSource(descriptor.getFileDescriptor());
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+        // scaled while decoding, a 4K frame is never held at full resolution
+        return retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, width, height);
+      }
+      return retriever.getFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Unable to extract a frame from " + uri, e);
+      return null;
+    } finally {
+      retriever.release();
+      descriptor.close();
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  @Nullable
+  private Bitmap renderPdfPage(Uri uri, int width, int height) throws IOException {
+    ParcelFileDescriptor descriptor = open(uri);
+    PdfRenderer renderer;
+    try {
+      renderer = new PdfRenderer(descriptor);
+    } catch (IOException | RuntimeException e) {
+      descriptor.close();
+      throw e;
+    }
+    try {
+      if (renderer.getPageCount() == 0) {
+        return null;
+      }
+      PdfRenderer.Page page = renderer.openPage(0);
+      try {
+        float scale = Math.min((float) width / page.getWidth(), (float) height / page.getHeight());
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, Math.round(page.getWidth() * scale)),
+            Math.max(1, Math.round(page.getHeight() * scale)), Bitmap.Config.ARGB_8888);
+        // pages are transparent, JPEG would turn that into black
+        bitmap.eraseColor(Color.WHITE);
+        page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+        return bitmap;
+      } finally {
+        page.close();
+      }
+    } finally {
+      // the renderer owns the descriptor and closes it
+      renderer.close();
+    }
+  }
+
+  private ParcelFileDescriptor open(Uri uri) throws IOException {
+    ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+    if (descriptor == null) {
+      throw new FileNotFoundException("Unable to open " + uri);
+    }
+    return descriptor;
+  }
+
+  private void write(Bitmap bitmap, File file) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create thumbnail directory " + dir);
+    }
+
+    File partial = new File(dir, file.getName() + ".tmp");
+    FileOutputStream out = new FileOutputStream(partial);
+    try {
+      Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+      if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+        throw new IOException("Unable to encode thumbnail " + file.getName());
+      }
+    } finally {
+      out.close();
+    }
+    if (!partial.renameTo(file)) {
+      partial.delete();
+      throw new IOException("Unable to move " + partial + " into the thumbnail cache");
+    }
+
+    trim();
+  }
+
+  /**
+   * Deletes the least recently used files once the disk tier exceeds its budget.
+   */
+  private synchronized void trim() {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    if (total <= MAX_DISK_BYTES) {
+      return;
+    }
+
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long difference = a.lastModified() - b.lastModified();
+        return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+      }
+    });
+    for (File file : files) {
+      if (total <= MAX_DISK_BYTES) {
+        break;
+      }
+      total -= file.length();
+      file.delete();
+    }
+  }
+
+  /**
+   * @return the largest power of two which keeps the decoded image at least as large as the
+   * requested bounds.
+   */
+  static int sampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+    int sampleSize = 1;
+    while (sourceWidth / (sampleSize * 2) >= width && sourceHeight / (sampleSize * 2) >= height) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  private static Bitmap fit(Bitmap bitmap, int width, int height) {
+    float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+    if (scale >= 1) {
+      return bitmap;
+    }
+    return Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+        Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+  }
+}
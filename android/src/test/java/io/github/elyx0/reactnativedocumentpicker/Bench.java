@@ -0,0 +1,58 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal JMH style harness: runs an operation for a number of warmup iterations, then times
+ * each measured iteration and prints the distribution.
+ */
+final class Bench {
+  interface Operation {
+    void run() throws Exception;
+  }
+
+  static final class Stats {
+    final double meanMs;
+    final double p50Ms;
+    final double p90Ms;
+    final double maxMs;
+
+    private Stats(long[] nanos) {
+      Arrays.sort(nanos);
+      long total = 0;
+      for (long value : nanos) {
+        total += value;
+      }
+      meanMs = total / 1e6 / nanos.length;
+      p50Ms = nanos[nanos.length / 2] / 1e6;
+      p90Ms = nanos[(int) Math.min(nanos.length - 1, Math.round(nanos.length * 0.9))] / 1e6;
+      maxMs = nanos[nanos.length - 1] / 1e6;
+    }
+  }
+
+  private Bench() {
+  }
+
+  static Stats run(String name, int warmup, int iterations, Operation operation) throws Exception {
+    for (int i = 0; i < warmup; ++i) {
+      operation.run();
+    }
+
+    long[] nanos = new long[iterations];
+    for (int i = 0; i < iterations; ++i) {
+      long start = System.nanoTime();
+      operation.run();
+      nanos[i] = System.nanoTime() - start;
+    }
+
+    Stats stats = new Stats(nanos);
+    System.out.println(String.format(Locale.ROOT, "%-48s mean %9.3f ms  p50 %9.3f ms  p90 %9.3f ms  max %9.3f ms",
+        name, stats.meanMs, stats.p50Ms, stats.p90Ms, stats.maxMs));
+    return stats;
+  }
+
+  static void reportThroughput(String name, long bytes, Stats stats) {
+    System.out.println(String.format(Locale.ROOT, "%-48s %9.1f MB/s", name, bytes / 1048576.0 / (stats.meanMs / 1000)));
+  }
+}
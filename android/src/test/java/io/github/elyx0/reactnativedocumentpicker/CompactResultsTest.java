@@ -0,0 +1,48 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactResultsTest {
+  @Test
+  public void cutsBatchesByCount() {
+    CompactResults results = filled(1200, "content://provider/document/");
+
+    assertEquals(500, results.batchEnd(0, 500));
+    assertEquals(1000, results.batchEnd(500, 500));
+    assertEquals(1200, results.batchEnd(1000, 500));
+  }
+
+  @Test
+  public void cutsBatchesByCharacters() {
+    char[] chars = new char[CompactResults.MAX_BATCH_CHARS / 4];
+    Arrays.fill(chars, 'a');
+    CompactResults results = filled(10, new String(chars));
+
+    // the batch closes once the budget is reached, so it may overshoot by one document
+    int end = results.batchEnd(0, 500);
+    assertEquals(4, end);
+    assertEquals(8, results.batchEnd(end, 500));
+  }
+
+  @Test
+  public void keepsOversizedDocumentInItsOwnBatch() {
+    char[] chars = new char[CompactResults.MAX_BATCH_CHARS * 2];
+    Arrays.fill(chars, 'a');
+    CompactResults results = filled(3, new String(chars));
+
+    assertEquals(1, results.batchEnd(0, 500));
+    assertEquals(2, results.batchEnd(1, 500));
+  }
+
+  private static CompactResults filled(int count, String prefix) {
+    CompactResults results = new CompactResults(count, false, false);
+    for (int i = 0; i < count; ++i) {
+      results.set(i, prefix + i, null, null, -1, null, null);
+    }
+    return results;
+  }
+}
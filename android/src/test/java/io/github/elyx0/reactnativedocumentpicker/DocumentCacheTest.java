@@ -0,0 +1,281 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DocumentCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final long LAST_MODIFIED = 1500000000000L;
+
+  private Context context;
+  private File dir;
+  private DocumentCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    context = RuntimeEnvironment.application;
+    Robolectric.setupContentProvider(FakeDocumentProvider.class, FakeDocumentProvider.AUTHORITY);
+    dir = folder.newFolder("documents");
+    cache = new DocumentCache(dir);
+  }
+
+  @After
+  public void tearDown() {
+    FakeDocumentProvider.reset();
+  }
+
+  @Test
+  public void releasesByContentUriOrCopyPath() throws Exception {
+    DocumentCache.Entry first = copy("first.bin", 1000);
+    DocumentCache.Entry second = copy("second.bin", 2000);
+
+    assertEquals(1000, cache.release(first.uri));
+    assertEquals(2000, cache.release("file://" + second.file.getAbsolutePath()));
+    assertEquals(0, cache.release(first.uri));
+
+    assertFalse(first.file.exists());
+    assertFalse(second.file.exists());
+    assertEquals(0, cache.getCount());
+    assertEquals(0, cache.getTotalBytes());
+  }
+
+  @Test
+  public void releaseAllKeepsSettings() throws Exception {
+    copy("a.bin", 100);
+    copy("b.bin", 200);
+    cache.setMaxBytes(4096);
+
+    assertEquals(300, cache.releaseAll());
+    assertEquals(0, cache.getCount());
+    assertEquals(4096, new DocumentCache(dir).getMaxBytes());
+  }
+
+  @Test
+  public void clearKeepsRunningCopies() throws Exception {
+    DocumentCache.Entry done = copy("done.bin", 100);
+    byte[] bytes = TestFiles.randomBytes((int) (FileCopier.CHECKPOINT_BYTES * 3 / 2), 6);
+    Uri uri = FakeDocumentProvider.add("running.bin", TestFiles.write(folder.newFile(), bytes));
+    final boolean[] cleared = {false};
+
+    DocumentCache.Entry running = cache.getOrCopy(context, uri, "running.bin", LAST_MODIFIED, bytes.length, false, null,
+        new FileCopier.ProgressListener() {
+          @Override
+          public void onProgress(long bytesCopied, long totalBytes) {
+            if (!cleared[0] && bytesCopied >= FileCopier.CHECKPOINT_BYTES) {
+              cleared[0] = true;
+              cache.clear();
+            }
+          }
+        });
+
+    assertTrue(cleared[0]);
+    assertFalse(done.file.exists());
+    assertArrayEquals(bytes, TestFiles.read(running.file));
+    assertEquals(1, cache.getCount());
+  }
+
+  @Test
+  public void sweepEvictsExpiredCopies() throws Exception {
+    DocumentCache.Entry entry = copy("old.bin", 100);
+    Thread.sleep(20);
+    cache.setMaxAgeMs(10);
+    // still pinned, its path was handed out in this process
+    cache.sweep();
+    assertTrue(entry.file.exists());
+
+    cache.flush();
+    DocumentCache restarted = new DocumentCache(dir);
+    restarted.sweep();
+
+    assertFalse(entry.file.exists());
+    assertEquals(0, restarted.getCount());
+  }
+
+  @Test
+  public void budgetSkipsPinnedCopies() throws Exception {
+    DocumentCache.Entry first = copy("first.bin", 1000);
+    DocumentCache.Entry second = copy("second.bin", 1000);
+    cache.setMaxBytes(1500);
+
+    assertTrue(first.file.exists());
+    assertTrue(second.file.exists());
+
+    // nothing is pinned in a new process, the least recently used copy goes
+    DocumentCache restarted = new DocumentCache(dir);
+    restarted.setMaxBytes(1500);
+    assertFalse(first.file.exists());
+    assertTrue(second.file.exists());
+    assertEquals(1000, restarted.getTotalBytes());
+  }
+
+  @Test
+  public void budgetAppliesWithoutRelease() throws Exception {
+    cache.setMaxBytes(1500);
+    List<DocumentCache.Entry> picked = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      picked.add(copy("picked" + i + ".bin", 1000));
+    }
+
+    // pinned by the same pick, past twice the budget the copy handed out first goes anyway
+    assertFalse(picked.get(0).file.exists());
+    assertEquals(3000, cache.getTotalBytes());
+
+    // that pick resolves, then the next one does
+    cache.unpinOlder();
+    DocumentCache.Entry next = copy("next.bin", 1000);
+    cache.unpinOlder();
+
+    for (DocumentCache.Entry entry : picked) {
+      assertFalse(entry.file.exists());
+    }
+    assertTrue(next.file.exists());
+    assertEquals(1000, cache.getTotalBytes());
+    assertEquals(1, cache.getCount());
+  }
+
+  @Test
+  public void copiesAgainWithoutRevalidation() throws Exception {
+    Uri uri = FakeDocumentProvider.add("unsized.bin", TestFiles.write(folder.newFile(), new byte[100]), -1);
+
+    DocumentCache.Entry first = cache.getOrCopy(context, uri, "unsized.bin", -1, -1, false, null, null);
+    DocumentCache.Entry second = cache.getOrCopy(context, uri, "unsized.bin", -1, -1, false, null, null);
+
+    assertFalse(first.key.equals(second.key));
+    assertTrue(first.file.exists());
+    assertEquals(2, cache.getCount());
+  }
+
+  @Test
+  public void sweepDeletesOrphans() throws Exception {
+    DocumentCache.Entry entry = copy("kept.bin", 100);
+    File partial = TestFiles.write(new File(dir, "0123abcd.tmp"), new byte[300]);
+    File unindexed = new File(dir, "4567cdef");
+    assertTrue(unindexed.mkdirs());
+    TestFiles.write(new File(unindexed, "lost.bin"), new byte[50]);
+
+    cache.sweep();
+
+    assertTrue(entry.file.isFile());
+    assertFalse(partial.exists());
+    assertFalse(unindexed.exists());
+    assertEquals(1, cache.getCount());
+  }
+
+  @Test
+  public void resumesInterruptedCopy() throws Exception {
+    final byte[] bytes = TestFiles.randomBytes((int) (FileCopier.CHECKPOINT_BYTES * 3 / 2) + 5, 3);
+    Uri uri = FakeDocumentProvider.add("large.bin", TestFiles.write(folder.newFile(), bytes));
+
+    try {
+      cache.getOrCopy(context, uri, "large.bin", LAST_MODIFIED, bytes.length, true, null, new FileCopier.ProgressListener() {
+        @Override
+        public void onProgress(long bytesCopied, long totalBytes) throws IOException {
+          if (bytesCopied >= FileCopier.CHECKPOINT_BYTES) {
+            throw new IOException("Process died");
+          }
+        }
+      });
+      fail("The copy should have been interrupted");
+    } catch (IOException e) {
+      // expected
+    }
+
+    List<DocumentCache.Pending> pending = cache.getPendingCopies();
+    assertEquals(1, pending.size());
+    assertEquals(uri.toString(), pending.get(0).journal.uri);
+    assertEquals(FileCopier.CHECKPOINT_BYTES, pending.get(0).journal.committed);
+    assertFalse(pending.get(0).running);
+    // a restarted process sweeps before anything else
+    new DocumentCache(dir).sweep();
+    assertEquals(1, cache.getPendingCopies().size());
+
+    final long[] firstProgress = {-1};
+    DocumentCache.Entry entry = cache.getOrCopy(context, uri, "large.bin", LAST_MODIFIED, bytes.length, true, null,
+        new FileCopier.ProgressListener() {
+          @Override
+          public void onProgress(long bytesCopied, long totalBytes) {
+            if (firstProgress[0] < 0) {
+              firstProgress[0] = bytesCopied;
+            }
+          }
+        });
+
+    assertTrue(firstProgress[0] > FileCopier.CHECKPOINT_BYTES);
+    assertArrayEquals(bytes, TestFiles.read(entry.file));
+    assertTrue(cache.getPendingCopies().isEmpty());
+  }
+
+  @Test
+  public void startsOverWithoutLastModified() throws Exception {
+    byte[] bytes = TestFiles.randomBytes((int) (FileCopier.CHECKPOINT_BYTES * 3 / 2), 4);
+    Uri uri = FakeDocumentProvider.add("large.bin", TestFiles.write(folder.newFile(), bytes));
+
+    interrupt(uri, -1, bytes.length);
+
+    assertTrue(cache.getPendingCopies().isEmpty());
+    for (String name : dir.list()) {
+      assertFalse(name, name.endsWith(".part") || name.endsWith(".journal"));
+    }
+  }
+
+  @Test
+  public void trimsPendingCopiesToBudget() throws Exception {
+    byte[] bytes = TestFiles.randomBytes((int) (FileCopier.CHECKPOINT_BYTES * 3 / 2), 5);
+    Uri uri = FakeDocumentProvider.add("large.bin", TestFiles.write(folder.newFile(), bytes));
+    DocumentCache.Entry kept = copy("kept.bin", 1000);
+
+    interrupt(uri, LAST_MODIFIED, bytes.length);
+    assertEquals(1, cache.getPendingCopies().size());
+
+    cache.setMaxBytes(FileCopier.CHECKPOINT_BYTES);
+    assertTrue(cache.getPendingCopies().isEmpty());
+    assertTrue(kept.file.isFile());
+  }
+
+  private void interrupt(Uri uri, long lastModified, long size) throws Exception {
+    try {
+      cache.getOrCopy(context, uri, "large.bin", lastModified, size, false, null, new FileCopier.ProgressListener() {
+        @Override
+        public void onProgress(long bytesCopied, long totalBytes) throws IOException {
+          if (bytesCopied >= FileCopier.CHECKPOINT_BYTES) {
+            throw new IOException("Process died");
+          }
+        }
+      });
+      fail("The copy should have been interrupted");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private DocumentCache.Entry copy(String name, int size) throws Exception {
+    Uri uri = FakeDocumentProvider.add(name, TestFiles.write(folder.newFile(), TestFiles.randomBytes(size, size)));
+    return cache.getOrCopy(context, uri, name, -1, size, false, null, null);
+  }
+}
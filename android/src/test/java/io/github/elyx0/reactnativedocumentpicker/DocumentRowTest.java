@@ -0,0 +1,87 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DocumentRowTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = RuntimeEnvironment.application;
+    Robolectric.setupContentProvider(FakeDocumentProvider.class, FakeDocumentProvider.AUTHORITY);
+  }
+
+  @After
+  public void tearDown() {
+    FakeDocumentProvider.reset();
+  }
+
+  @Test
+  public void reportsSizesAbove2Gb() throws Exception {
+    long size = (3L << 30) + 5;
+    Uri uri = FakeDocumentProvider.add("large.bin", folder.newFile(), size);
+
+    DocumentRow row = DocumentRow.query(context, uri, new IpcCounter());
+
+    assertEquals(size, row.size);
+    assertEquals("large.bin", row.displayName);
+    assertEquals(FakeDocumentProvider.MIME_TYPE, row.mimeType);
+  }
+
+  @Test
+  public void readsEverythingWithOneQuery() throws Exception {
+    Uri uri = FakeDocumentProvider.add("one-query", TestFiles.write(folder.newFile(), new byte[42]));
+    IpcCounter ipc = new IpcCounter();
+
+    DocumentRow row = DocumentRow.query(context, uri, ipc);
+
+    assertEquals(42, row.size);
+    assertEquals(1, ipc.total());
+  }
+
+  @Test
+  public void fileUrisNeedNoQuery() throws Exception {
+    File file = TestFiles.write(folder.newFile("local.txt"), new byte[7]);
+    IpcCounter ipc = new IpcCounter();
+
+    DocumentRow row = DocumentRow.query(context, Uri.fromFile(file), ipc);
+
+    assertEquals(7, row.size);
+    assertEquals("local.txt", row.displayName);
+    assertEquals(file.getAbsolutePath(), row.dataPath);
+    assertEquals(0, ipc.total());
+  }
+
+  @Test
+  public void unansweredQueryIsNotMissing() {
+    // the fake provider returns a null cursor, like a provider which timed out
+    DocumentRow row = DocumentRow.query(context, Uri.parse("content://" + FakeDocumentProvider.AUTHORITY + "/absent"),
+        new IpcCounter());
+
+    assertNull(row.displayName);
+    assertFalse(row.missing);
+  }
+}
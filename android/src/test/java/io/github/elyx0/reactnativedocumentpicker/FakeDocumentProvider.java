@@ -0,0 +1,137 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content provider serving files from the JVM's disk with a configurable latency per call, to
+ * stand in for remote or slow document providers.
+ */
+public class FakeDocumentProvider extends ContentProvider {
+  static final String AUTHORITY = "io.github.elyx0.reactnativedocumentpicker.test";
+  static final String MIME_TYPE = "application/octet-stream";
+
+  private static final Map<String, Document> DOCUMENTS = new ConcurrentHashMap<>();
+  private static volatile long latencyMs;
+
+  private static class Document {
+    final File file;
+    // reported size, may differ from the file to simulate documents larger than the disk allows
+    final long size;
+    final long lastModified;
+
+    Document(File file, long size, long lastModified) {
+      this.file = file;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+
+  static Uri add(String name, File file) {
+    return add(name, file, file.length());
+  }
+
+  static Uri add(String name, File file, long reportedSize) {
+    DOCUMENTS.put(name, new Document(file, reportedSize, file.lastModified()));
+    return Uri.parse("content://" + AUTHORITY + "/" + name);
+  }
+
+  static void setLatencyMs(long latency) {
+    latencyMs = latency;
+  }
+
+  static void reset() {
+    DOCUMENTS.clear();
+    latencyMs = 0;
+  }
+
+  @Override
+  public boolean onCreate() {
+    return true;
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    simulateLatency();
+    Document document = DOCUMENTS.get(uri.getLastPathSegment());
+    if (document == null) {
+      return null;
+    }
+
+    if (projection == null) {
+      projection = new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+    }
+    Object[] row = new Object[projection.length];
+    for (int i = 0; i < projection.length; ++i) {
+      String column = projection[i];
+      if (OpenableColumns.DISPLAY_NAME.equals(column)) {
+        row[i] = uri.getLastPathSegment();
+      } else if (OpenableColumns.SIZE.equals(column)) {
+        // a negative reported size stands for a provider which does not know it
+        row[i] = document.size >= 0 ? document.size : null;
+      } else if (DocumentsContract.Document.COLUMN_MIME_TYPE.equals(column)) {
+        row[i] = MIME_TYPE;
+      } else if (DocumentsContract.Document.COLUMN_LAST_MODIFIED.equals(column)) {
+        row[i] = document.lastModified;
+      }
+      // _data and anything else stays null, like a provider without local files
+    }
+
+    MatrixCursor cursor = new MatrixCursor(projection);
+    cursor.addRow(row);
+    return cursor;
+  }
+
+  @Override
+  public String getType(Uri uri) {
+    simulateLatency();
+    return DOCUMENTS.containsKey(uri.getLastPathSegment()) ? MIME_TYPE : null;
+  }
+
+  @Override
+  public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+    simulateLatency();
+    Document document = DOCUMENTS.get(uri.getLastPathSegment());
+    if (document == null) {
+      throw new FileNotFoundException(uri.toString());
+    }
+    return ParcelFileDescriptor.open(document.file, ParcelFileDescriptor.MODE_READ_ONLY);
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int delete(Uri uri, String selection, String[] selectionArgs) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    throw new UnsupportedOperationException();
+  }
+
+  private static void simulateLatency() {
+    if (latencyMs > 0) {
+      // not SystemClock.sleep, Robolectric only advances its fake clock there
+      try {
+        Thread.sleep(latencyMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FileCopierTest {
+  // around the 256 KB copy buffer and the 8 MB transfer slice
+  private static final int[] SIZES = {0, 1, 256 * 1024 - 1, 256 * 1024, 256 * 1024 + 3, 8 * 1024 * 1024 + 17};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = RuntimeEnvironment.application;
+    Robolectric.setupContentProvider(FakeDocumentProvider.class, FakeDocumentProvider.AUTHORITY);
+  }
+
+  @After
+  public void tearDown() {
+    FakeDocumentProvider.reset();
+  }
+
+  @Test
+  public void copiesBytesExactly() throws Exception {
+    for (int size : SIZES) {
+      byte[] bytes = TestFiles.randomBytes(size, size);
+      Uri uri = FakeDocumentProvider.add("doc-" + size, TestFiles.write(folder.newFile(), bytes));
+      File destination = new File(folder.getRoot(), "copy-" + size);
+
+      FileCopier.Result result = FileCopier.copy(context, uri, destination, false, null, null);
+
+      assertEquals(size, result.bytesCopied);
+      assertArrayEquals("size " + size, bytes, TestFiles.read(destination));
+      assertNull(result.checksum);
+    }
+  }
+
+  @Test
+  public void verifiedCopyReportsSourceChecksum() throws Exception {
+    byte[] bytes = TestFiles.randomBytes(1024 * 1024 + 5, 1);
+    Uri uri = FakeDocumentProvider.add("verified", TestFiles.write(folder.newFile(), bytes));
+
+    FileCopier.Result result = FileCopier.copy(context, uri, folder.newFile(), true, ContentDigest.SHA256, null);
+
+    String expected = TestFiles.hex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    assertEquals(expected, result.checksum);
+    assertEquals(expected, result.hash);
+  }
+
+  @Test
+  public void hashesMatchReferenceImplementations() throws Exception {
+    byte[] bytes = TestFiles.randomBytes(300 * 1024, 2);
+    Uri uri = FakeDocumentProvider.add("hashed", TestFiles.write(folder.newFile(), bytes));
+
+    FileCopier.Result md5 = FileCopier.copy(context, uri, folder.newFile(), false, ContentDigest.MD5, null);
+    assertEquals(TestFiles.hex(MessageDigest.getInstance("MD5").digest(bytes)), md5.hash);
+
+    FileCopier.Result crc = FileCopier.copy(context, uri, folder.newFile(), false, ContentDigest.CRC32, null);
+    CRC32 reference = new CRC32();
+    reference.update(bytes);
+    assertEquals(String.format("%08x", reference.getValue()), crc.hash);
+  }
+
+  @Test
+  public void cancelledCopyDeletesDestination() throws Exception {
+    Uri uri = FakeDocumentProvider.add("cancelled", TestFiles.write(folder.newFile(), TestFiles.randomBytes(1024 * 1024, 3)));
+    File destination = new File(folder.getRoot(), "cancelled-copy");
+
+    try {
+      FileCopier.copy(context, uri, destination, false, null, new FileCopier.ProgressListener() {
+        @Override
+        public void onProgress(long bytesCopied, long totalBytes) throws IOException {
+          throw new InterruptedIOException("cancelled");
+        }
+      });
+      fail("Expected the copy to be aborted");
+    } catch (InterruptedIOException expected) {
+    }
+    assertFalse(destination.exists());
+  }
+
+  @Test
+  public void bufferedCopyMatchesTransfer() throws Exception {
+    byte[] bytes = TestFiles.randomBytes(3 * 1024 * 1024 + 11, 4);
+    File source = TestFiles.write(folder.newFile(), bytes);
+    File transferred = folder.newFile();
+    File buffered = folder.newFile();
+
+    FileInputStream in = new FileInputStream(source);
+    FileOutputStream out = new FileOutputStream(transferred);
+    try {
+      assertEquals(bytes.length, FileCopier.transfer(in.getChannel(), out.getChannel(), 0, bytes.length, null));
+    } finally {
+      in.close();
+      out.close();
+    }
+
+    in = new FileInputStream(source);
+    out = new FileOutputStream(buffered);
+    try {
+      assertEquals(bytes.length, FileCopier.bufferedCopy(in.getChannel(), out.getChannel(), -1, null, null, null));
+    } finally {
+      in.close();
+      out.close();
+    }
+
+    assertArrayEquals(bytes, TestFiles.read(transferred));
+    assertArrayEquals(bytes, TestFiles.read(buffered));
+  }
+
+  /**
+   * Writes a sparse source and a full copy of more than 2 GB, enable with -PlargeFiles=true.
+   */
+  @Test
+  public void copiesDocumentsLargerThan2Gb() throws Exception {
+    assumeTrue(Boolean.getBoolean("documentpicker.largeFiles"));
+
+    long length = (1L << 31) + 4097;
+    byte[] tail = TestFiles.randomBytes(4096, 5);
+    File source = folder.newFile();
+    RandomAccessFile sparse = new RandomAccessFile(source, "rw");
+    try {
+      sparse.setLength(length);
+      sparse.seek(length - tail.length);
+      sparse.write(tail);
+    } finally {
+      sparse.close();
+    }
+
+    Uri uri = FakeDocumentProvider.add("large", source);
+    File destination = new File(folder.getRoot(), "large-copy");
+    FileCopier.Result result = FileCopier.copy(context, uri, destination, false, null, null);
+
+    assertEquals(length, result.bytesCopied);
+    assertEquals(length, destination.length());
+    byte[] copiedTail = new byte[tail.length];
+    RandomAccessFile copy = new RandomAccessFile(destination, "r");
+    try {
+      copy.seek(length - tail.length);
+      copy.readFully(copiedTail);
+    } finally {
+      copy.close();
+    }
+    assertArrayEquals(tail, copiedTail);
+  }
+}
@@ -0,0 +1,122 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PathResolutionTest {
+  private static final String RESOLVER_AUTHORITY = "io.github.elyx0.reactnativedocumentpicker.test.resolver";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = RuntimeEnvironment.application;
+    Robolectric.setupContentProvider(FakeDocumentProvider.class, FakeDocumentProvider.AUTHORITY);
+    PathCache.SHARED.clear();
+  }
+
+  @After
+  public void tearDown() {
+    FakeDocumentProvider.reset();
+    PathCache.SHARED.clear();
+  }
+
+  @Test
+  public void generateFileNameNumbersCollisions() throws Exception {
+    File dir = folder.getRoot();
+
+    assertEquals("a.txt", DocumentPickerModule.generateFileName("a.txt", dir).getName());
+    assertEquals("a(1).txt", DocumentPickerModule.generateFileName("a.txt", dir).getName());
+    assertEquals("a(2).txt", DocumentPickerModule.generateFileName("a.txt", dir).getName());
+    assertEquals("b", DocumentPickerModule.generateFileName("b", dir).getName());
+    assertEquals("b(1)", DocumentPickerModule.generateFileName("b", dir).getName());
+    assertNull(DocumentPickerModule.generateFileName(null, dir));
+  }
+
+  @Test
+  public void fallsBackToTheUriWithoutLocalPath() throws Exception {
+    Uri uri = FakeDocumentProvider.add("remote", folder.newFile());
+
+    assertEquals(uri.toString(), DocumentPickerModule.getPath(context, uri));
+  }
+
+  @Test
+  public void registeredResolverIsUsedAndMemoized() {
+    final AtomicInteger calls = new AtomicInteger();
+    PathResolvers.SHARED.register(RESOLVER_AUTHORITY, new PathResolver() {
+      @Override
+      public Resolution resolve(Request request) {
+        calls.incrementAndGet();
+        return new Resolution("/resolved/" + request.getUri().getLastPathSegment(), Cost.NONE);
+      }
+    });
+    Uri uri = Uri.parse("content://" + RESOLVER_AUTHORITY + "/document");
+
+    assertEquals("/resolved/document", DocumentPickerModule.getPath(context, uri));
+    assertEquals("/resolved/document", DocumentPickerModule.getPath(context, uri));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void pathCacheDropsEntriesWhenTheDocumentChanges() {
+    PathCache cache = new PathCache(16, 60 * 1000);
+    cache.put("content://a/1", 100, "/a/1", false);
+
+    assertEquals("/a/1", cache.get("content://a/1", 100));
+    assertEquals("/a/1", cache.get("content://a/1", -1));
+    assertNull(cache.get("content://a/1", 200));
+    assertNull(cache.get("content://a/1", 100));
+  }
+
+  @Test
+  public void pathCacheExpiresEntries() {
+    PathCache cache = new PathCache(16, 0);
+    cache.put("content://a/1", 100, "/a/1", false);
+
+    assertNull(cache.get("content://a/1", 100));
+  }
+
+  @Test
+  public void pathCacheIsBounded() {
+    PathCache cache = new PathCache(2, 60 * 1000);
+    cache.put("content://a/1", 1, "/a/1", false);
+    cache.put("content://a/2", 1, "/a/2", false);
+    cache.put("content://a/3", 1, "/a/3", false);
+
+    assertNull(cache.get("content://a/1", 1));
+    assertEquals("/a/3", cache.get("content://a/3", 1));
+  }
+
+  @Test
+  public void pathCacheChecksThatCopiesStillExist() throws Exception {
+    File copy = folder.newFile();
+    PathCache cache = new PathCache(16, 60 * 1000);
+    cache.put("content://a/1", 1, copy.getPath(), true);
+
+    assertEquals(copy.getPath(), cache.get("content://a/1", 1));
+    copy.delete();
+    assertNull(cache.get("content://a/1", 1));
+  }
+}
@@ -0,0 +1,122 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PickFilterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = RuntimeEnvironment.application;
+    Robolectric.setupContentProvider(FakeDocumentProvider.class, FakeDocumentProvider.AUTHORITY);
+  }
+
+  @After
+  public void tearDown() {
+    FakeDocumentProvider.reset();
+  }
+
+  @Test
+  public void rejectsOnReportedSize() {
+    PickFilter filter = new PickFilter();
+    filter.minSize = 10;
+    filter.maxSize = 100;
+
+    assertEquals(PickFilter.REASON_TOO_SMALL, filter.reject(row("a.bin", 9)));
+    assertNull(filter.reject(row("a.bin", 10)));
+    assertNull(filter.reject(row("a.bin", 100)));
+    assertEquals(PickFilter.REASON_TOO_LARGE, filter.reject(row("a.bin", 101)));
+    // unknown sizes are left to the copy
+    assertNull(filter.reject(row("a.bin", -1)));
+    assertTrue(filter.limitsCopyOf(row("a.bin", -1)));
+    assertFalse(filter.limitsCopyOf(row("a.bin", 50)));
+  }
+
+  @Test
+  public void matchesExtensionsIgnoringCaseAndDot() {
+    PickFilter filter = new PickFilter();
+    filter.setExtensions(Arrays.asList(".PDF", "jpg"));
+
+    assertNull(filter.reject(row("report.pdf", 1)));
+    assertNull(filter.reject(row("photo.JPG", 1)));
+    assertEquals(PickFilter.REASON_EXTENSION, filter.reject(row("movie.mp4", 1)));
+    assertEquals(PickFilter.REASON_EXTENSION, filter.reject(row("pdf", 1)));
+    assertEquals(PickFilter.REASON_EXTENSION, filter.reject(row(null, 1)));
+  }
+
+  @Test
+  public void countsFromZero() {
+    PickFilter filter = new PickFilter();
+    assertFalse(filter.isExceedingCount(1000));
+
+    filter.maxCount = 2;
+    assertFalse(filter.isExceedingCount(1));
+    assertTrue(filter.isExceedingCount(2));
+  }
+
+  @Test
+  public void abortsCopyOfUnknownSizeAboveLimit() throws Exception {
+    Uri uri = FakeDocumentProvider.add("unsized.bin",
+        TestFiles.write(folder.newFile(), TestFiles.randomBytes(1024 * 1024, 7)), -1);
+    DocumentPickerModule.PickOptions options = new DocumentPickerModule.PickOptions();
+    options.filter.maxSize = 1000;
+    DocumentRow row = DocumentRow.query(context, uri, options.ipc);
+
+    DocumentCache cache = new DocumentCache(folder.newFolder("documents"));
+
+    assertNull(DocumentPickerModule.cacheDocument(context, cache, uri, row, options));
+    assertEquals(0, cache.getCount());
+    assertTrue(options.oversized.contains(uri.toString()));
+  }
+
+  @Test
+  public void rejectsOversizedPathCacheHit() throws Exception {
+    Uri uri = FakeDocumentProvider.add("unsized.bin",
+        TestFiles.write(folder.newFile(), TestFiles.randomBytes(1024 * 1024, 7)), -1);
+    DocumentPickerModule.PickOptions options = new DocumentPickerModule.PickOptions();
+    options.filter.maxSize = 1000;
+    DocumentRow row = DocumentRow.query(context, uri, options.ipc);
+    // an unlimited copy resolved by an earlier pick
+    File copy = TestFiles.write(folder.newFile(), TestFiles.randomBytes(2000, 8));
+    PathCache.SHARED.put(uri.toString(), row.lastModified, copy.getAbsolutePath(), true);
+
+    try {
+      DocumentPickerModule.getPath(context, uri, row, options);
+      assertTrue(options.oversized.contains(uri.toString()));
+    } finally {
+      PathCache.SHARED.clear();
+    }
+  }
+
+  private static DocumentRow row(String name, long size) {
+    DocumentRow row = new DocumentRow();
+    row.displayName = name;
+    row.size = size;
+    return row;
+  }
+}
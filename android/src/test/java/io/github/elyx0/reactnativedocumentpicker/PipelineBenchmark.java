@@ -0,0 +1,219 @@
+package io.github.elyx0.reactnativedocumentpicker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Latency and throughput of the pick pipeline against {@link FakeDocumentProvider}. Skipped
+ * unless enabled with {@code ./gradlew testDebugUnitTest -Pbenchmark=true}, results are printed
+ * to the test output.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PipelineBenchmark {
+  private static final int[] SELECTION_SIZES = {1, 10, 100, 500};
+  private static final long PROVIDER_LATENCY_MS = 2;
+  private static final int COPY_SIZE = 64 * 1024 * 1024;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Context context;
+  private ResolutionPipeline pipeline;
+
+  @Before
+  public void setUp() {
+    assumeTrue(Boolean.getBoolean("documentpicker.benchmark"));
+    context = RuntimeEnvironment.application;
+    Robolectric.setupContentProvider(FakeDocumentProvider.class, FakeDocumentProvider.AUTHORITY);
+    pipeline = new ResolutionPipeline(8);
+  }
+
+  @After
+  public void tearDown() {
+    if (pipeline != null) {
+      pipeline.shutdown();
+    }
+    FakeDocumentProvider.reset();
+    PathCache.SHARED.clear();
+  }
+
+  @Test
+  public void pickResolutionLatency() throws Exception {
+    File file = TestFiles.write(folder.newFile(), new byte[1024]);
+    FakeDocumentProvider.setLatencyMs(PROVIDER_LATENCY_MS);
+
+    for (int size : SELECTION_SIZES) {
+      final List<Uri> uris = new ArrayList<>();
+      for (int i = 0; i < size; ++i) {
+        uris.add(FakeDocumentProvider.add("document-" + i, file));
+      }
+
+      for (final int concurrency : new int[]{1, 4, 8}) {
+        Bench.run("resolve " + size + " uris, concurrency " + concurrency, 2, size > 100 ? 5 : 20, new Bench.Operation() {
+          @Override
+          public void run() throws Exception {
+            // measure the provider round-trips, not the memoized paths of the previous run
+            PathCache.SHARED.clear();
+            resolve(uris, concurrency);
+          }
+        });
+      }
+    }
+  }
+
+  @Test
+  public void copyThroughputPerStrategy() throws Exception {
+    final File source = TestFiles.write(folder.newFile(), TestFiles.randomBytes(COPY_SIZE, 1));
+    final File target = folder.newFile();
+
+    Bench.Stats transfer = Bench.run("copy 64 MB with transferTo", 2, 10, new Bench.Operation() {
+      @Override
+      public void run() throws Exception {
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+          FileCopier.transfer(in.getChannel(), out.getChannel(), 0, COPY_SIZE, null);
+        } finally {
+          in.close();
+          out.close();
+        }
+      }
+    });
+    Bench.reportThroughput("transferTo", COPY_SIZE, transfer);
+
+    Bench.Stats buffered = Bench.run("copy 64 MB with a direct buffer", 2, 10, new Bench.Operation() {
+      @Override
+      public void run() throws Exception {
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+          FileCopier.bufferedCopy(in.getChannel(), out.getChannel(), COPY_SIZE, null, null, null);
+        } finally {
+          in.close();
+          out.close();
+        }
+      }
+    });
+    Bench.reportThroughput("direct buffer", COPY_SIZE, buffered);
+
+    for (final String algorithm : new String[]{ContentDigest.CRC32, ContentDigest.MD5, ContentDigest.SHA256}) {
+      Bench.Stats hashed = Bench.run("copy 64 MB with a " + algorithm + " digest", 2, 10, new Bench.Operation() {
+        @Override
+        public void run() throws Exception {
+          FileInputStream in = new FileInputStream(source);
+          FileOutputStream out = new FileOutputStream(target);
+          try {
+            FileCopier.bufferedCopy(in.getChannel(), out.getChannel(), COPY_SIZE, null,
+                ContentDigest.create(algorithm), null);
+          } finally {
+            in.close();
+            out.close();
+          }
+        }
+      });
+      Bench.reportThroughput(algorithm + " digest", COPY_SIZE, hashed);
+    }
+
+    final Uri uri = FakeDocumentProvider.add("copied", source);
+    Bench.Stats provider = Bench.run("copy 64 MB through the provider", 2, 10, new Bench.Operation() {
+      @Override
+      public void run() throws Exception {
+        FileCopier.copy(context, uri, target, false, null, null);
+      }
+    });
+    Bench.reportThroughput("provider", COPY_SIZE, provider);
+  }
+
+  @Test
+  public void cacheNamingCost() throws Exception {
+    for (final int collisions : new int[]{0, 10, 100}) {
+      final File dir = folder.newFolder();
+      for (int i = 0; i < collisions; ++i) {
+        DocumentPickerModule.generateFileName("document.pdf", dir);
+      }
+
+      Bench.run("generateFileName, " + collisions + " collisions", 10, 100, new Bench.Operation() {
+        @Override
+        public void run() {
+          File file = DocumentPickerModule.generateFileName("document.pdf", dir);
+          // keep the number of collisions constant
+          file.delete();
+        }
+      });
+    }
+
+    final Uri uri = Uri.parse("content://" + FakeDocumentProvider.AUTHORITY + "/document.pdf");
+    Bench.run("DocumentCache.keyFor", 100, 10000, new Bench.Operation() {
+      @Override
+      public void run() {
+        DocumentCache.keyFor(uri, 1546300800000L, 123456789L);
+      }
+    });
+  }
+
+  private void resolve(List<Uri> uris, int concurrency) throws Exception {
+    final DocumentPickerModule.PickOptions options = new DocumentPickerModule.PickOptions();
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<Exception> error = new AtomicReference<>();
+
+    pipeline.resolve(uris, concurrency, new ResolutionPipeline.Resolver() {
+      @Override
+      public WritableMap resolve(int index, Uri uri) {
+        // the provider work of getMetadata, the bridge maps need the native library
+        DocumentRow row = DocumentRow.query(context, uri, options.ipc);
+        JavaOnlyMap map = new JavaOnlyMap();
+        map.putString("uri", DocumentPickerModule.getPath(context, uri, row, options));
+        map.putString("name", row.displayName);
+        map.putDouble("size", row.size);
+        return map;
+      }
+    }, new ResolutionPipeline.Callback() {
+      @Override
+      public void onResolved(int index, WritableMap result) {
+      }
+
+      @Override
+      public void onComplete(WritableMap[] results) {
+        done.countDown();
+      }
+
+      @Override
+      public void onError(Exception e) {
+        error.set(e);
+        done.countDown();
+      }
+    });
+
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    if (error.get() != null) {
+      throw error.get();
+    }
+  }
+}
@@ -43,12 +43,173 @@ declare module 'react-native-document-picker' {
   };
   interface DocumentPickerOptions<OS extends keyof PlatformTypes> {
     type: Array<PlatformTypes[OS][keyof PlatformTypes[OS]]> | DocumentType[OS]
+    concurrency?: number
+    verifyCopy?: boolean
+    copyTo?: 'lazy'
+    extendedMetadata?: boolean
+    mode?: 'import' | 'open'
+    hash?: 'sha256' | 'md5' | 'crc32'
+    maxSize?: number
+    minSize?: number
+    extensions?: string[]
+    maxCount?: number
   }
   interface DocumentPickerResponse {
     uri: string;
     type: string;
     name: string;
-    size: string;
+    size?: number;
+    lastModified?: number;
+    flags?: number;
+    documentId?: string;
+    isVirtual?: boolean;
+    supportsThumbnail?: boolean;
+    contentUri?: string;
+    hash?: string;
+    rejected?: boolean;
+    reason?: 'tooLarge' | 'tooSmall' | 'extension' | 'maxCount';
+  }
+  interface DocumentPickerDirectory {
+    uri: string;
+  }
+  interface DocumentPickerDirectoryOptions {
+    mimeTypes?: string[];
+    extensions?: string[];
+    maxDepth?: number;
+    pageSize?: number;
+    concurrency?: number;
+  }
+  interface DocumentPickerDirectoryEntry {
+    uri: string;
+    name: string | null;
+    type: string | null;
+    size?: number;
+    lastModified?: number;
+    path: string;
+    depth: number;
+  }
+  interface DocumentPickerDirectorySummary {
+    total: number;
+    directories: number;
+  }
+  interface DocumentPickerThumbnail {
+    uri: string;
+    width: number;
+    height: number;
+  }
+  interface DocumentPickerRecentDocument {
+    uri: string;
+    contentUri: string;
+    name: string | null;
+    type: string | null;
+    size?: number;
+    lastModified?: number;
+    openedAt: number;
+  }
+  interface DocumentPickerReopenedDocument extends DocumentPickerRecentDocument {
+    changed: boolean;
+  }
+  interface DocumentPickerStreamSummary {
+    total: number;
+  }
+  interface DocumentPickerCompactOptions<OS extends keyof PlatformTypes> extends DocumentPickerOptions<OS> {
+    batchSize?: number
+  }
+  interface DocumentPickerCompactBatch {
+    offset: number;
+    count: number;
+    uri: string[];
+    name: Array<string | null>;
+    type: Array<string | null>;
+    size: Array<number | null>;
+    hash?: Array<string | null>;
+    contentUri?: Array<string | null>;
+    reason?: Array<'tooLarge' | 'tooSmall' | 'extension' | 'maxCount' | null>;
+  }
+  interface DocumentPickerCompactSummary {
+    total: number;
+    batches: number;
+  }
+  interface DocumentPickerCopyProgress {
+    jobId: number;
+    uri: string;
+    bytesCopied: number;
+    totalBytes: number;
+    bytesPerSecond: number;
+  }
+  interface DocumentPickerPendingCopy {
+    uri: string;
+    name?: string;
+    size?: number;
+    bytesCopied: number;
+    updatedAt: number;
+    running: boolean;
+  }
+  interface DocumentPickerSubscription {
+    remove(): void;
+  }
+  interface DocumentPickerIpcStats {
+    query: number;
+    getType: number;
+    total: number;
+  }
+  interface DocumentPickerStageStats {
+    count: number;
+    meanMs: number;
+    maxMs: number;
+    bucketBoundsMs: number[];
+    buckets: number[];
+  }
+  interface DocumentPickerResolverStats {
+    none: number;
+    query: number;
+    copy: number;
+    cached: number;
+    unresolved: number;
+  }
+  interface DocumentPickerStats {
+    ipc: DocumentPickerIpcStats;
+    lastPick: DocumentPickerIpcStats;
+    counters: {
+      picks: number;
+      documents: number;
+      copies: number;
+      bytesCopied: number;
+      cacheHits: number;
+      pathCacheHits: number;
+      resumedCopies: number;
+    };
+    stages: {
+      query: DocumentPickerStageStats;
+      path: DocumentPickerStageStats;
+      copy: DocumentPickerStageStats;
+      serialize: DocumentPickerStageStats;
+    };
+    resolvers: {[authority: string]: DocumentPickerResolverStats};
+  }
+  interface DocumentPickerReadHandle {
+    handle: number;
+    size: number;
+    seekable: boolean;
+  }
+  interface DocumentPickerCacheInfo {
+    count: number;
+    size: number;
+    maxSize: number;
+    maxAge: number;
+    lastSweep?: number;
+    evictedCount: number;
+    evictedBytes: number;
+    releasedCount: number;
+    releasedBytes: number;
+    orphanCount: number;
+    orphanBytes: number;
+    pendingCount: number;
+    pendingSize: number;
+  }
+  interface DocumentPickerCacheOptions {
+    maxSize?: number;
+    maxAge?: number;
   }
   type Platform = 'ios' | 'android' | 'windows'
   export default class DocumentPicker<OS extends keyof PlatformTypes = Platform> {
@@ -59,6 +220,46 @@ declare module 'react-native-document-picker' {
     static pickMultiple<OS extends keyof PlatformTypes = Platform>(
       options: DocumentPickerOptions<OS>
     ): Promise<DocumentPickerResponse[]>;
+    static pickStreaming<OS extends keyof PlatformTypes = Platform>(
+      options: DocumentPickerOptions<OS>,
+      onDocument: (document: DocumentPickerResponse, index: number) => void
+    ): Promise<DocumentPickerStreamSummary>;
+    static pickCompact<OS extends keyof PlatformTypes = Platform>(
+      options: DocumentPickerCompactOptions<OS>,
+      onBatch: (batch: DocumentPickerCompactBatch) => void
+    ): Promise<DocumentPickerCompactSummary>;
+    static materialize(
+      uri: string,
+      onProgress?: (progress: DocumentPickerCopyProgress) => void
+    ): Promise<string>;
+    static addCopyProgressListener(
+      listener: (progress: DocumentPickerCopyProgress) => void
+    ): DocumentPickerSubscription;
+    static cancelCopy(jobId: number): Promise<boolean>;
+    static getPendingCopies(): Promise<DocumentPickerPendingCopy[]>;
+    static resumeCopy(
+      uri: string,
+      onProgress?: (progress: DocumentPickerCopyProgress) => void
+    ): Promise<string>;
+    static open(uri: string): Promise<DocumentPickerReadHandle>;
+    static read(handle: number, offset: number, length: number): Promise<string>;
+    static close(handle: number): Promise<boolean>;
+    static getCacheInfo(): Promise<DocumentPickerCacheInfo>;
+    static configureCache(options: DocumentPickerCacheOptions): Promise<DocumentPickerCacheInfo>;
+    static clearCache(): Promise<void>;
+    static release(uri: string): Promise<number>;
+    static releaseAll(): Promise<number>;
+    static getStats(): Promise<DocumentPickerStats>;
+    static setTracingEnabled(enabled: boolean): void;
+    static pickDirectory(): Promise<DocumentPickerDirectory>;
+    static readDirectory(
+      uri: string,
+      options: DocumentPickerDirectoryOptions,
+      onPage: (entries: DocumentPickerDirectoryEntry[]) => void
+    ): Promise<DocumentPickerDirectorySummary>;
+    static getThumbnail(uri: string, width: number, height: number): Promise<DocumentPickerThumbnail | null>;
+    static getRecentDocuments(): Promise<DocumentPickerRecentDocument[]>;
+    static reopen(uri: string): Promise<DocumentPickerReopenedDocument>;
     static isCancel<IError extends {code?: string}>(err?: IError): boolean;
   }
 }
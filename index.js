@@ -1,5 +1,5 @@
 'use strict';
-import { Platform, NativeModules } from 'react-native';
+import { Platform, NativeModules, DeviceEventEmitter } from 'react-native';
 const { RNDocumentPicker } = NativeModules;
 
 if (!RNDocumentPicker) {
@@ -20,6 +20,13 @@ if (!RNDocumentPicker) {
 
 const E_DOCUMENT_PICKER_CANCELED = 'DOCUMENT_PICKER_CANCELED';
 
+const EVENT_DOCUMENT = 'RNDocumentPickerDocument';
+const EVENT_COPY_PROGRESS = 'RNDocumentPickerCopyProgress';
+const EVENT_DIRECTORY_PAGE = 'RNDocumentPickerDirectoryPage';
+const EVENT_BATCH = 'RNDocumentPickerBatch';
+
+let nextStreamId = 1;
+
 function pick(opts) {
   if ('filetype' in opts) {
     throw new TypeError(
@@ -73,6 +80,173 @@ function pick(opts) {
   return RNDocumentPicker.pick(opts);
 }
 
+function callAndroidOnly(method, ...args) {
+  if (Platform.OS !== 'android') {
+    return Promise.reject(
+      new Error(`DocumentPicker.${method} is only available on Android`)
+    );
+  }
+
+  return RNDocumentPicker[method](...args);
+}
+
+function materialize(uri, onProgress) {
+  if (Platform.OS !== 'android') {
+    // Only Android defers copies, the uri already points to a readable file elsewhere
+    return Promise.resolve(uri);
+  }
+
+  return copyWithProgress('materialize', uri, onProgress);
+}
+
+function resumeCopy(uri, onProgress) {
+  if (Platform.OS !== 'android') {
+    return callAndroidOnly('resumeCopy', uri);
+  }
+
+  return copyWithProgress('resumeCopy', uri, onProgress);
+}
+
+function copyWithProgress(method, uri, onProgress) {
+  if (typeof onProgress !== 'function') {
+    return RNDocumentPicker[method](uri);
+  }
+
+  const subscription = DeviceEventEmitter.addListener(
+    EVENT_COPY_PROGRESS,
+    event => {
+      if (event.uri === uri) {
+        onProgress(event);
+      }
+    }
+  );
+
+  return RNDocumentPicker[method](uri).then(
+    path => {
+      subscription.remove();
+      return path;
+    },
+    err => {
+      subscription.remove();
+      throw err;
+    }
+  );
+}
+
+function pickStreaming(opts, onDocument) {
+  if (typeof onDocument !== 'function') {
+    throw new TypeError(
+      'DocumentPicker.pickStreaming expects an onDocument callback as second argument'
+    );
+  }
+
+  if (Platform.OS !== 'android') {
+    // Other platforms resolve everything at once, replay the results through the callback
+    return pick(opts).then(results => {
+      results.forEach((result, index) => onDocument(result, index));
+      return { total: results.length };
+    });
+  }
+
+  const streamId = nextStreamId++;
+  const subscription = DeviceEventEmitter.addListener(EVENT_DOCUMENT, event => {
+    if (event.streamId === streamId) {
+      onDocument(event.document, event.index);
+    }
+  });
+
+  return pick({ ...opts, stream: true, streamId }).then(
+    summary => {
+      subscription.remove();
+      return summary;
+    },
+    err => {
+      subscription.remove();
+      throw err;
+    }
+  );
+}
+
+function toBatch(results) {
+  return {
+    offset: 0,
+    count: results.length,
+    uri: results.map(result => result.uri),
+    name: results.map(result => result.name),
+    type: results.map(result => result.type),
+    size: results.map(result => (result.size != null ? result.size : null)),
+  };
+}
+
+function pickCompact(opts, onBatch) {
+  if (typeof onBatch !== 'function') {
+    throw new TypeError(
+      'DocumentPicker.pickCompact expects an onBatch callback as second argument'
+    );
+  }
+
+  if (Platform.OS !== 'android') {
+    // Other platforms resolve everything at once, hand it over as a single batch
+    return pick(opts).then(results => {
+      onBatch(toBatch(results));
+      return { total: results.length, batches: 1 };
+    });
+  }
+
+  const streamId = nextStreamId++;
+  const subscription = DeviceEventEmitter.addListener(EVENT_BATCH, event => {
+    if (event.streamId === streamId) {
+      onBatch(event);
+    }
+  });
+
+  return pick({ ...opts, compact: true, streamId }).then(
+    summary => {
+      subscription.remove();
+      return summary;
+    },
+    err => {
+      subscription.remove();
+      throw err;
+    }
+  );
+}
+
+function readDirectory(uri, opts, onPage) {
+  if (typeof onPage !== 'function') {
+    throw new TypeError(
+      'DocumentPicker.readDirectory expects an onPage callback as third argument'
+    );
+  }
+
+  if (Platform.OS !== 'android') {
+    return Promise.reject(
+      new Error('DocumentPicker.readDirectory is only available on Android')
+    );
+  }
+
+  const streamId = nextStreamId++;
+  const subscription = DeviceEventEmitter.addListener(
+    EVENT_DIRECTORY_PAGE,
+    event => {
+      if (event.streamId === streamId) {
+        onPage(event.entries);
+      }
+    }
+  );
+
+  return RNDocumentPicker.readDirectory(uri, { ...opts, streamId }).then(
+    summary => {
+      subscription.remove();
+      return summary;
+    },
+    err => {
+      subscription.remove();
+      throw err;
+    }
+  );
+}
+
 const Types = {
   mimeTypes: {
     allFiles: '*/*',
@@ -133,6 +307,106 @@ export default class DocumentPicker {
     return pick(options);
   }
 
+  static pickStreaming(opts, onDocument) {
+    const options = {
+      ...opts,
+      multiple: true,
+    };
+
+    return pickStreaming(options, onDocument);
+  }
+
+  static pickCompact(opts, onBatch) {
+    const options = {
+      ...opts,
+      multiple: true,
+    };
+
+    return pickCompact(options, onBatch);
+  }
+
+  static materialize(uri, onProgress) {
+    return materialize(uri, onProgress);
+  }
+
+  static addCopyProgressListener(listener) {
+    return DeviceEventEmitter.addListener(EVENT_COPY_PROGRESS, listener);
+  }
+
+  static cancelCopy(jobId) {
+    return callAndroidOnly('cancelCopy', jobId);
+  }
+
+  static getPendingCopies() {
+    return callAndroidOnly('getPendingCopies');
+  }
+
+  static resumeCopy(uri, onProgress) {
+    return resumeCopy(uri, onProgress);
+  }
+
+  static open(uri) {
+    return callAndroidOnly('open', uri);
+  }
+
+  static read(handle, offset, length) {
+    return callAndroidOnly('read', handle, offset, length);
+  }
+
+  static close(handle) {
+    return callAndroidOnly('close', handle);
+  }
+
+  static getCacheInfo() {
+    return callAndroidOnly('getCacheInfo');
+  }
+
+  static configureCache(opts) {
+    return callAndroidOnly('configureCache', opts);
+  }
+
+  static clearCache() {
+    return callAndroidOnly('clearCache');
+  }
+
+  static release(uri) {
+    return callAndroidOnly('release', uri);
+  }
+
+  static releaseAll() {
+    return callAndroidOnly('releaseAll');
+  }
+
+  static getStats() {
+    return callAndroidOnly('getStats');
+  }
+
+  static setTracingEnabled(enabled) {
+    if (Platform.OS === 'android') {
+      RNDocumentPicker.setTracingEnabled(enabled);
+    }
+  }
+
+  static pickDirectory() {
+    return callAndroidOnly('pickDirectory');
+  }
+
+  static readDirectory(uri, opts, onPage) {
+    return readDirectory(uri, opts || {}, onPage);
+  }
+
+  static getThumbnail(uri, width, height) {
+    return callAndroidOnly('getThumbnail', uri, width, height);
+  }
+
+  static getRecentDocuments() {
+    return callAndroidOnly('getRecentDocuments');
+  }
+
+  static reopen(uri) {
+    return callAndroidOnly('reopen', uri);
+  }
+
   static isCancel(err) {
     return err && err.code === E_DOCUMENT_PICKER_CANCELED;
   }